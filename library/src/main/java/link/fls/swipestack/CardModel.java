@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+/**
+ * The data of a card which consists of nothing but an image and a caption.
+ * Such cards are drawn by a single flat {@link CardModelView} instead of an
+ * inflated view hierarchy, or by the stack itself without any view, see
+ * {@link CardModelAdapter} and {@link SwipeStack#RENDER_MODE_CANVAS}.
+ */
+public interface CardModel {
+
+    /**
+     * Returns the image filling the card above the caption, or null to only
+     * draw the card background until the image is available.
+     */
+    @Nullable
+    Bitmap getImage();
+
+    /**
+     * Returns the caption drawn at the bottom of the card, or null for none.
+     */
+    @Nullable
+    CharSequence getCaption();
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter for cards which only show an image and a caption. Every card is a
+ * single {@link CardModelView} which draws the {@link CardModel} itself, so a
+ * stack over thousands of items costs a handful of flat views. With
+ * {@link SwipeStack#RENDER_MODE_CANVAS} the stack draws the models itself and
+ * creates no views at all.
+ * <p>
+ * To switch between these lightweight cards and regular inflated views, pass
+ * the other adapter to {@link SwipeStack#setAdapter(android.widget.Adapter)}.
+ * The stack keeps its position, so both adapters should cover the same data.
+ * </p>
+ *
+ * @param <T> The type of the card models.
+ */
+public class CardModelAdapter<T extends CardModel> extends SwipeStackAdapter {
+
+    private final ArrayList<T> mItems = new ArrayList<>();
+
+    private int mCardBackgroundColor = 0xFFFFFFFF;
+    private float mCornerRadius;
+    private float mCaptionTextSize;
+    private int mCaptionTextColor = 0xFF000000;
+    private int mCaptionPadding = -1;
+
+    public CardModelAdapter() {
+    }
+
+    public CardModelAdapter(List<T> items) {
+        mItems.addAll(items);
+    }
+
+    /**
+     * Replaces all items.
+     */
+    public void setItems(List<T> items) {
+        mItems.clear();
+        mItems.addAll(items);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Appends the given items behind the existing ones.
+     */
+    public void addItems(List<T> items) {
+        int positionStart = mItems.size();
+        mItems.addAll(items);
+        notifyItemRangeInserted(positionStart, items.size());
+    }
+
+    public int getCardBackgroundColor() {
+        return mCardBackgroundColor;
+    }
+
+    public void setCardBackgroundColor(int color) {
+        mCardBackgroundColor = color;
+        notifyDataSetChanged();
+    }
+
+    public float getCornerRadius() {
+        return mCornerRadius;
+    }
+
+    /**
+     * @param radius The corner radius of the cards in pixels.
+     */
+    public void setCornerRadius(float radius) {
+        mCornerRadius = radius;
+        notifyDataSetChanged();
+    }
+
+    public float getCaptionTextSize() {
+        return mCaptionTextSize;
+    }
+
+    /**
+     * @param size The text size of the captions in pixels, or 0 for the default.
+     */
+    public void setCaptionTextSize(float size) {
+        mCaptionTextSize = size;
+        notifyDataSetChanged();
+    }
+
+    public int getCaptionTextColor() {
+        return mCaptionTextColor;
+    }
+
+    public void setCaptionTextColor(int color) {
+        mCaptionTextColor = color;
+        notifyDataSetChanged();
+    }
+
+    public int getCaptionPadding() {
+        return mCaptionPadding;
+    }
+
+    /**
+     * @param padding The padding around the captions in pixels, or -1 for the default.
+     */
+    public void setCaptionPadding(int padding) {
+        mCaptionPadding = padding;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public T getItem(int position) {
+        return mItems.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        CardModelView view = convertView instanceof CardModelView
+                ? (CardModelView) convertView
+                : new CardModelView(parent.getContext());
+
+        view.setCardBackgroundColor(mCardBackgroundColor);
+        view.setCornerRadius(mCornerRadius);
+        if (mCaptionTextSize > 0) view.setCaptionTextSize(mCaptionTextSize);
+        view.setCaptionTextColor(mCaptionTextColor);
+        if (mCaptionPadding >= 0) view.setCaptionPadding(mCaptionPadding);
+        view.setModel(getItem(position));
+        return view;
+    }
+}
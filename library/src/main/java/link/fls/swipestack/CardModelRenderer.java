@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.support.annotation.Nullable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+/**
+ * Draws the image and caption of a {@link CardModel}. Used by each
+ * {@link CardModelView} and by a {@link SwipeStack} which draws the cards itself,
+ * where one renderer is shared by all cards and every card keeps its caption
+ * layout and image shader in its own {@link Cache}.
+ */
+class CardModelRenderer {
+
+    private final Paint mImagePaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final Paint mBackgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint mCaptionPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Matrix mShaderMatrix = new Matrix();
+    private final RectF mCardRect = new RectF();
+    private final RectF mImageRect = new RectF();
+    private final float mDefaultTextSize;
+    private final int mDefaultPadding;
+
+    private float mCornerRadius;
+    private int mCaptionPadding;
+    private int mLayoutGeneration;
+
+    CardModelRenderer(Context context) {
+        float density = context.getResources().getDisplayMetrics().density;
+        mDefaultTextSize = 16 * density;
+        mDefaultPadding = Math.round(16 * density);
+        mCaptionPaint.setColor(Color.BLACK);
+        mCaptionPaint.setTextSize(mDefaultTextSize);
+        mCaptionPadding = mDefaultPadding;
+        mBackgroundPaint.setColor(Color.WHITE);
+    }
+
+    /**
+     * Takes over the styling of the given adapter.
+     */
+    void setStyle(CardModelAdapter<?> adapter) {
+        setBackgroundColor(adapter.getCardBackgroundColor());
+        setCornerRadius(adapter.getCornerRadius());
+        setCaptionTextSize(adapter.getCaptionTextSize() > 0
+                ? adapter.getCaptionTextSize() : mDefaultTextSize);
+        setCaptionTextColor(adapter.getCaptionTextColor());
+        setCaptionPadding(adapter.getCaptionPadding() >= 0
+                ? adapter.getCaptionPadding() : mDefaultPadding);
+    }
+
+    void setBackgroundColor(int color) {
+        mBackgroundPaint.setColor(color);
+    }
+
+    float getCornerRadius() {
+        return mCornerRadius;
+    }
+
+    void setCornerRadius(float radius) {
+        mCornerRadius = radius;
+    }
+
+    /**
+     * @return True if the size changed and the caption layouts are rebuilt.
+     */
+    boolean setCaptionTextSize(float size) {
+        if (mCaptionPaint.getTextSize() == size) return false;
+        mCaptionPaint.setTextSize(size);
+        mLayoutGeneration++;
+        return true;
+    }
+
+    /**
+     * @return True if the color changed.
+     */
+    boolean setCaptionTextColor(int color) {
+        if (mCaptionPaint.getColor() == color) return false;
+        mCaptionPaint.setColor(color);
+        return true;
+    }
+
+    /**
+     * @return True if the padding changed and the caption layouts are rebuilt.
+     */
+    boolean setCaptionPadding(int padding) {
+        if (mCaptionPadding == padding) return false;
+        mCaptionPadding = padding;
+        mLayoutGeneration++;
+        return true;
+    }
+
+    /**
+     * Draws the rounded card background, which a {@link CardModelView} gets
+     * from its background drawable instead.
+     */
+    void drawBackground(Canvas canvas, int width, int height) {
+        mCardRect.set(0, 0, width, height);
+        canvas.drawRoundRect(mCardRect, mCornerRadius, mCornerRadius, mBackgroundPaint);
+    }
+
+    /**
+     * Draws a card without a view at the transform kept in its state, the same
+     * one a card view would get, along with its background.
+     */
+    void drawCard(Canvas canvas, CardState card, CardModel model) {
+        int width = card.getWidth();
+        int height = card.getHeight();
+        float alpha = card.getAlpha();
+        if (width <= 0 || height <= 0 || alpha <= 0) return;
+
+        int saveCount = canvas.save();
+        float pivotX = width / 2f;
+        float pivotY = height / 2f;
+        canvas.translate(card.getX(), card.getY());
+        canvas.rotate(card.getRotation(), pivotX, pivotY);
+        canvas.scale(card.getScale(), card.getScale(), pivotX, pivotY);
+        if (alpha < 1f) {
+            canvas.saveLayerAlpha(0, 0, width, height, Math.round(alpha * 255),
+                    Canvas.ALL_SAVE_FLAG);
+        }
+
+        drawBackground(canvas, width, height);
+        draw(canvas, model, width, height, card.modelCache);
+        canvas.restoreToCount(saveCount);
+    }
+
+    void draw(Canvas canvas, CardModel model, int width, int height, Cache cache) {
+        StaticLayout caption = getCaptionLayout(model.getCaption(), width, cache);
+        int captionHeight = caption != null ? caption.getHeight() + 2 * mCaptionPadding : 0;
+
+        Bitmap image = model.getImage();
+        if (image != null && !image.isRecycled() && height > captionHeight) {
+            mCardRect.set(0, 0, width, height);
+            mImageRect.set(0, 0, width, height - captionHeight);
+            updateShader(image, cache);
+
+            // Only the top corners are rounded if there is a caption below the image
+            canvas.save();
+            canvas.clipRect(mImageRect);
+            canvas.drawRoundRect(captionHeight > 0 ? mCardRect : mImageRect,
+                    mCornerRadius, mCornerRadius, mImagePaint);
+            canvas.restore();
+        }
+
+        if (caption != null) {
+            canvas.save();
+            canvas.translate(mCaptionPadding, height - captionHeight + mCaptionPadding);
+            caption.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    /**
+     * Scales the image so it fills the image area and centers it, like
+     * {@link android.widget.ImageView.ScaleType#CENTER_CROP}.
+     */
+    private void updateShader(Bitmap image, Cache cache) {
+        if (cache.shaderBitmap != image) {
+            cache.shaderBitmap = image;
+            cache.shader = new BitmapShader(image, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        }
+
+        float scale = Math.max(mImageRect.width() / image.getWidth(),
+                mImageRect.height() / image.getHeight());
+        mShaderMatrix.setScale(scale, scale);
+        mShaderMatrix.postTranslate((mImageRect.width() - image.getWidth() * scale) / 2,
+                (mImageRect.height() - image.getHeight() * scale) / 2);
+        cache.shader.setLocalMatrix(mShaderMatrix);
+        mImagePaint.setShader(cache.shader);
+    }
+
+    @Nullable
+    private StaticLayout getCaptionLayout(@Nullable CharSequence caption, int width,
+                                          Cache cache) {
+        int textWidth = width - 2 * mCaptionPadding;
+        if (TextUtils.isEmpty(caption) || textWidth <= 0) return null;
+
+        if (cache.captionLayout == null || cache.layoutWidth != textWidth
+                || cache.layoutGeneration != mLayoutGeneration
+                || !TextUtils.equals(cache.layoutCaption, caption)) {
+            cache.captionLayout = new StaticLayout(caption, mCaptionPaint, textWidth,
+                    Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+            cache.layoutCaption = caption;
+            cache.layoutWidth = textWidth;
+            cache.layoutGeneration = mLayoutGeneration;
+        }
+        return cache.captionLayout;
+    }
+
+    /**
+     * Drops the cached caption layout and shader, e.g. when a card gets another model.
+     */
+    static void clear(Cache cache) {
+        cache.captionLayout = null;
+        cache.layoutCaption = null;
+        cache.shader = null;
+        cache.shaderBitmap = null;
+    }
+
+    /**
+     * What a single card reuses from one frame to the next.
+     */
+    static class Cache {
+        StaticLayout captionLayout;
+        CharSequence layoutCaption;
+        int layoutWidth;
+        int layoutGeneration;
+        BitmapShader shader;
+        Bitmap shaderBitmap;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.GradientDrawable;
+import android.support.annotation.Nullable;
+import android.view.View;
+
+/**
+ * A card which draws the image and caption of a {@link CardModel} itself. It has
+ * no children, so binding a model neither inflates nor measures a hierarchy and
+ * only the caption layout is rebuilt when the text or the width changes.
+ */
+public class CardModelView extends View {
+
+    private final CardModelRenderer mRenderer;
+    private final CardModelRenderer.Cache mCache = new CardModelRenderer.Cache();
+    private final GradientDrawable mBackground = new GradientDrawable();
+
+    private CardModel mModel;
+
+    public CardModelView(Context context) {
+        super(context);
+        mRenderer = new CardModelRenderer(context);
+        mBackground.setColor(Color.WHITE);
+        setBackground(mBackground);
+    }
+
+    /**
+     * Binds the given model and redraws the card.
+     */
+    public void setModel(@Nullable CardModel model) {
+        mModel = model;
+        invalidate();
+    }
+
+    @Nullable
+    public CardModel getModel() {
+        return mModel;
+    }
+
+    public void setCardBackgroundColor(int color) {
+        mBackground.setColor(color);
+    }
+
+    public void setCornerRadius(float radius) {
+        if (mRenderer.getCornerRadius() == radius) return;
+        mRenderer.setCornerRadius(radius);
+        mBackground.setCornerRadius(radius);
+        invalidate();
+    }
+
+    public void setCaptionTextSize(float size) {
+        if (mRenderer.setCaptionTextSize(size)) invalidate();
+    }
+
+    public void setCaptionTextColor(int color) {
+        if (mRenderer.setCaptionTextColor(color)) invalidate();
+    }
+
+    public void setCaptionPadding(int padding) {
+        if (mRenderer.setCaptionPadding(padding)) invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mModel == null) return;
+        mRenderer.draw(canvas, mModel, getWidth(), getHeight(), mCache);
+    }
+}
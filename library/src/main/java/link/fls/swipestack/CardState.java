@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Bitmap;
+import android.view.View;
+import android.view.animation.Interpolator;
+
+/**
+ * Per card bookkeeping of a {@link SwipeStack}. An instance is attached to each
+ * card view once and travels with the view through the recycle pool. Cards which
+ * the stack draws itself from a {@link CardModel} have no view and keep their
+ * transform here, so the swipe helper and the stack animator move both alike.
+ */
+class CardState {
+
+    /**
+     * The view of the card, or null if the stack draws the card itself.
+     */
+    final View view;
+    private final View mHost;
+
+    /**
+     * The caption layout and image shader of a card drawn by the stack.
+     */
+    CardModelRenderer.Cache modelCache;
+
+    private float mX;
+    private float mY;
+    private float mScale = 1f;
+    private float mAlpha = 1f;
+    private float mRotation;
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * The random rotation the card has while it rests on the stack.
+     */
+    float rotation;
+
+    /**
+     * Whether the card has just been added and still has to fade in.
+     */
+    boolean isNew;
+
+    /**
+     * Whether the card is being animated out of the stack. Set when the dismissal
+     * starts and cleared once it has been reported.
+     */
+    boolean isDismissing;
+
+    /**
+     * The adapter position of a card which is being dismissed.
+     */
+    int position;
+    int dismissDirection;
+    long dismissStartNanos;
+
+    /**
+     * The bitmap the card is drawn from while it is below the top of the stack.
+     */
+    Bitmap snapshot;
+    boolean isSnapshotDirty;
+
+    /**
+     * Whether the card is completely covered by a card above it and is not drawn.
+     */
+    boolean isOccluded;
+
+    boolean isAnimating;
+    boolean hasAnimationLayer;
+    long animationStartNanos;
+    long animationDurationNanos;
+    Interpolator interpolator;
+
+    float startX;
+    float startY;
+    float startScale;
+    float startAlpha;
+    float startRotation;
+
+    float targetX;
+    float targetY;
+    float targetScale;
+    float targetAlpha;
+    float targetRotation;
+
+    private CardState(View view, View host) {
+        this.view = view;
+        mHost = host;
+    }
+
+    static CardState get(View view) {
+        CardState state = (CardState) view.getTag(R.id.card_state);
+        if (state == null) {
+            state = new CardState(view, view);
+            view.setTag(R.id.card_state, state);
+        }
+        return state;
+    }
+
+    /**
+     * Creates the state of a card without a view which is drawn by the given stack.
+     */
+    static CardState forModel(View stack) {
+        CardState state = new CardState(null, stack);
+        state.modelCache = new CardModelRenderer.Cache();
+        return state;
+    }
+
+    float getX() {
+        return view != null ? view.getX() : mX;
+    }
+
+    float getY() {
+        return view != null ? view.getY() : mY;
+    }
+
+    float getScale() {
+        return view != null ? view.getScaleX() : mScale;
+    }
+
+    float getAlpha() {
+        return view != null ? view.getAlpha() : mAlpha;
+    }
+
+    float getRotation() {
+        return view != null ? view.getRotation() : mRotation;
+    }
+
+    int getWidth() {
+        return view != null ? view.getWidth() : mWidth;
+    }
+
+    int getHeight() {
+        return view != null ? view.getHeight() : mHeight;
+    }
+
+    void setX(float x) {
+        if (view != null) {
+            view.setX(x);
+        } else if (mX != x) {
+            mX = x;
+            mHost.invalidate();
+        }
+    }
+
+    void setY(float y) {
+        if (view != null) {
+            view.setY(y);
+        } else if (mY != y) {
+            mY = y;
+            mHost.invalidate();
+        }
+    }
+
+    void setScale(float scale) {
+        if (view != null) {
+            view.setScaleX(scale);
+            view.setScaleY(scale);
+        } else if (mScale != scale) {
+            mScale = scale;
+            mHost.invalidate();
+        }
+    }
+
+    void setAlpha(float alpha) {
+        if (view != null) {
+            view.setAlpha(alpha);
+        } else if (mAlpha != alpha) {
+            mAlpha = alpha;
+            mHost.invalidate();
+        }
+    }
+
+    void setRotation(float rotation) {
+        if (view != null) {
+            view.setRotation(rotation);
+        } else if (mRotation != rotation) {
+            mRotation = rotation;
+            mHost.invalidate();
+        }
+    }
+
+    /**
+     * Sets the size of a card without a view, views are measured and laid out instead.
+     */
+    void setSize(int width, int height) {
+        if (mWidth == width && mHeight == height) return;
+        mWidth = width;
+        mHeight = height;
+        mHost.invalidate();
+    }
+
+    /**
+     * Returns whether the given point of the stack lies within the card, taking
+     * its current translation, scale and rotation into account.
+     */
+    boolean containsPoint(float x, float y) {
+        float centerX = getX() + getWidth() / 2f;
+        float centerY = getY() + getHeight() / 2f;
+        double radians = Math.toRadians(-getRotation());
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float dx = x - centerX;
+        float dy = y - centerY;
+        float scale = getScale();
+        float localX = (dx * cos - dy * sin) / scale;
+        float localY = (dx * sin + dy * cos) / scale;
+        return Math.abs(localX) <= getWidth() / 2f && Math.abs(localY) <= getHeight() / 2f;
+    }
+
+    boolean hasTarget(float x, float y, float scale, float alpha, float rotation) {
+        return targetX == x && targetY == y && targetScale == scale
+                && targetAlpha == alpha && targetRotation == rotation;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.View;
+
+/**
+ * Fixed size ring buffer of the most recently dismissed views. The views keep
+ * their transforms and their {@link CardState}, so they can be brought back
+ * without asking the adapter for them again.
+ */
+class DismissHistory {
+
+    private View[] mViews;
+    private int mOldest;
+    private int mSize;
+
+    DismissHistory(int capacity) {
+        mViews = new View[Math.max(capacity, 0)];
+    }
+
+    int getCapacity() {
+        return mViews.length;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Adds a view as the newest entry.
+     *
+     * @return The oldest view if it had to make room for the new one, the view
+     * itself if the capacity is 0 or null otherwise.
+     */
+    View push(View view) {
+        if (mViews.length == 0) return view;
+
+        View evicted = null;
+        if (mSize == mViews.length) {
+            evicted = removeOldest();
+        }
+
+        mViews[(mOldest + mSize) % mViews.length] = view;
+        mSize++;
+        return evicted;
+    }
+
+    View peekNewest() {
+        if (mSize == 0) return null;
+        return mViews[(mOldest + mSize - 1) % mViews.length];
+    }
+
+    View popNewest() {
+        if (mSize == 0) return null;
+
+        int index = (mOldest + mSize - 1) % mViews.length;
+        View view = mViews[index];
+        mViews[index] = null;
+        mSize--;
+        return view;
+    }
+
+    View removeOldest() {
+        if (mSize == 0) return null;
+
+        View view = mViews[mOldest];
+        mViews[mOldest] = null;
+        mOldest = (mOldest + 1) % mViews.length;
+        mSize--;
+        return view;
+    }
+
+    View get(int index) {
+        return mViews[(mOldest + index) % mViews.length];
+    }
+
+    /**
+     * Changes the capacity, keeping the newest entries.
+     *
+     * @return The entries which no longer fit, oldest first.
+     */
+    View[] setCapacity(int capacity) {
+        capacity = Math.max(capacity, 0);
+        int evictedCount = Math.max(mSize - capacity, 0);
+        View[] evicted = new View[evictedCount];
+        for (int i = 0; i < evictedCount; i++) {
+            evicted[i] = removeOldest();
+        }
+
+        View[] views = new View[capacity];
+        for (int i = 0; i < mSize; i++) {
+            views[i] = get(i);
+        }
+        mViews = views;
+        mOldest = 0;
+        return evicted;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the tasks of several lanes on a fixed number of background threads. The
+ * lanes take turns, so a client queueing many tasks can't starve the others.
+ * Threads are started as tasks come in and are never more than the given count.
+ * The executor only holds on to lanes while they have tasks, so a lane which is
+ * dropped without being shut down, e.g. along with its stack, doesn't leak.
+ */
+class FairExecutor {
+
+    private static final String TAG = "FairExecutor";
+
+    // The lanes with queued or running tasks
+    private final ArrayList<Lane> mLanes = new ArrayList<>();
+    private final String mName;
+    private final int mMaxThreads;
+
+    private int mThreadCount;
+    private int mIdleThreads;
+    private int mNextLane;
+    private boolean mIsShutdown;
+
+    FairExecutor(String name, int maxThreads) {
+        mName = name;
+        mMaxThreads = Math.max(maxThreads, 1);
+    }
+
+    /**
+     * Returns a new lane. Shutting it down only affects its own tasks.
+     */
+    synchronized ExecutorService newLane() {
+        if (mIsShutdown) throw new RejectedExecutionException(mName + " has been shut down");
+
+        return new Lane();
+    }
+
+    /**
+     * Drops all pending tasks and lets the threads finish once they are idle.
+     */
+    synchronized void shutdown() {
+        mIsShutdown = true;
+        for (int i = mLanes.size() - 1; i >= 0; i--) {
+            Lane lane = mLanes.get(i);
+            lane.mTasks.clear();
+            if (lane.isIdle()) removeLane(lane);
+        }
+        notifyAll();
+    }
+
+    private synchronized void enqueue(Lane lane, Runnable task) {
+        if (lane.isShutdown()) throw new RejectedExecutionException(mName + " has been shut down");
+
+        if (lane.isIdle()) mLanes.add(lane);
+        lane.mTasks.offer(task);
+        if (mIdleThreads == 0 && mThreadCount < mMaxThreads) {
+            startThread();
+        } else {
+            // Threads waiting for a lane to terminate share the monitor
+            notifyAll();
+        }
+    }
+
+    private void startThread() {
+        mThreadCount++;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runTasks();
+            }
+        }, mName + "-" + mThreadCount).start();
+    }
+
+    private void runTasks() {
+        while (true) {
+            Lane lane;
+            Runnable task;
+            synchronized (this) {
+                while ((lane = nextLane()) == null) {
+                    if (mIsShutdown) {
+                        mThreadCount--;
+                        return;
+                    }
+                    mIdleThreads++;
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        mThreadCount--;
+                        return;
+                    } finally {
+                        mIdleThreads--;
+                    }
+                }
+                task = lane.mTasks.poll();
+                lane.mRunningTasks++;
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Task failed", e);
+            } finally {
+                synchronized (this) {
+                    lane.mRunningTasks--;
+                    if (lane.isIdle()) {
+                        removeLane(lane);
+                        if (lane.isShutdown()) notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the next lane with pending tasks after the one served last.
+     */
+    private Lane nextLane() {
+        int laneCount = mLanes.size();
+        for (int i = 0; i < laneCount; i++) {
+            int index = (mNextLane + i) % laneCount;
+            Lane lane = mLanes.get(index);
+            if (!lane.mTasks.isEmpty()) {
+                // Not wrapped yet, so a lane added in the meantime comes next
+                mNextLane = index + 1;
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    private void removeLane(Lane lane) {
+        int index = mLanes.indexOf(lane);
+        if (index < 0) return;
+
+        mLanes.remove(index);
+        if (index < mNextLane) mNextLane--;
+    }
+
+    private class Lane extends AbstractExecutorService {
+
+        final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        int mRunningTasks;
+        boolean mIsShutdown;
+
+        @Override
+        public void execute(Runnable task) {
+            enqueue(this, task);
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (FairExecutor.this) {
+                mIsShutdown = true;
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            synchronized (FairExecutor.this) {
+                List<Runnable> tasks = new ArrayList<>(mTasks);
+                mTasks.clear();
+                if (isIdle()) removeLane(this);
+                shutdown();
+                return tasks;
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (FairExecutor.this) {
+                return mIsShutdown || FairExecutor.this.mIsShutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (FairExecutor.this) {
+                return isShutdown() && isIdle();
+            }
+        }
+
+        /**
+         * Returns whether the lane has neither queued nor running tasks, i.e.
+         * whether the executor doesn't hold on to it.
+         */
+        boolean isIdle() {
+            return mTasks.isEmpty() && mRunningTasks == 0;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+                throws InterruptedException {
+            long deadline = SystemClock.uptimeMillis() + unit.toMillis(timeout);
+            synchronized (FairExecutor.this) {
+                while (!isTerminated()) {
+                    long remaining = deadline - SystemClock.uptimeMillis();
+                    if (remaining <= 0) return false;
+                    FairExecutor.this.wait(remaining);
+                }
+                return true;
+            }
+        }
+    }
+}
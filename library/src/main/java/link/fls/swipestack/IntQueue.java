@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+/**
+ * Growable ring buffer of ints, so queueing a value doesn't box it. It only
+ * allocates when it has to grow.
+ */
+class IntQueue {
+
+    private int[] mValues;
+    private int mHead;
+    private int mSize;
+
+    IntQueue(int initialCapacity) {
+        mValues = new int[Math.max(initialCapacity, 1)];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    void offer(int value) {
+        if (mSize == mValues.length) {
+            int[] values = new int[mValues.length * 2];
+            for (int x = 0; x < mSize; x++) {
+                values[x] = mValues[(mHead + x) % mValues.length];
+            }
+            mValues = values;
+            mHead = 0;
+        }
+
+        mValues[(mHead + mSize) % mValues.length] = value;
+        mSize++;
+    }
+
+    /**
+     * Removes and returns the oldest value. The queue must not be empty.
+     */
+    int poll() {
+        int value = mValues[mHead];
+        mHead = (mHead + 1) % mValues.length;
+        mSize--;
+        return value;
+    }
+
+    void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+}
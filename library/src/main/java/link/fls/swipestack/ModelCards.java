@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * The cards of a {@link SwipeStack} which draws them itself from the models of a
+ * {@link CardModelAdapter}. The cards have no views and keep their transform in
+ * their {@link CardState}, one {@link CardModelRenderer} draws all of them and
+ * the gestures on the top card reach the swipe helper through the stack.
+ */
+class ModelCards implements StackCards {
+
+    private final SwipeStack mStack;
+    private final CardModelRenderer mRenderer;
+    private final ArrayList<CardState> mCards = new ArrayList<>();
+    private final ArrayDeque<CardState> mPool = new ArrayDeque<>();
+
+    private CardState mTouchedCard;
+
+    ModelCards(SwipeStack stack) {
+        mStack = stack;
+        mRenderer = new CardModelRenderer(stack.getContext());
+    }
+
+    private CardModelAdapter<?> getAdapter() {
+        return (CardModelAdapter<?>) mStack.getAdapter();
+    }
+
+    @Override
+    public boolean hasViews() {
+        return false;
+    }
+
+    @Override
+    public int getCount() {
+        return mCards.size();
+    }
+
+    @Override
+    public CardState getCardAt(int index) {
+        return mCards.get(index);
+    }
+
+    @Override
+    public CardState addCard(int position) {
+        // The card is drawn from the model at its position, nothing to bind
+        CardState card = mPool.poll();
+        if (card == null) card = CardState.forModel(mStack);
+        mCards.add(0, card);
+        return card;
+    }
+
+    @Override
+    public void removeCard(CardState card) {
+        mCards.remove(card);
+        recycleCard(card);
+    }
+
+    @Override
+    public void removeDismissedCard(CardState card) {
+        removeCard(card);
+    }
+
+    @Override
+    public void removeAllCards() {
+        for (int x = 0; x < mCards.size(); x++) {
+            recycleCard(mCards.get(x));
+        }
+        mCards.clear();
+        mTouchedCard = null;
+    }
+
+    private void recycleCard(CardState card) {
+        mStack.getStackAnimator().reset(card);
+        CardModelRenderer.clear(card.modelCache);
+        mPool.offer(card);
+    }
+
+    @Override
+    public void rebindCard(int index, int position) {
+        // Cards read their model when they are drawn, so they are up to date already
+        mStack.invalidate();
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        mRenderer.setStyle(getAdapter());
+        mStack.invalidate();
+    }
+
+    @Override
+    public void layoutCard(int index, int topIndex, int left) {
+        CardState card = mCards.get(index);
+        card.setSize(getMeasuredWidth(card), getMeasuredHeight(card));
+    }
+
+    @Override
+    public int getMeasuredWidth(CardState card) {
+        return mStack.getWidth() - (mStack.getPaddingLeft() + mStack.getPaddingRight());
+    }
+
+    @Override
+    public int getMeasuredHeight(CardState card) {
+        return mStack.getHeight() - (mStack.getPaddingTop() + mStack.getPaddingBottom());
+    }
+
+    /**
+     * Draws the cards from the bottom up, each from the model at its position.
+     */
+    @Override
+    public void draw(Canvas canvas) {
+        CardModelAdapter<?> adapter = getAdapter();
+
+        for (int x = 0; x < mCards.size(); x++) {
+            CardState card = mCards.get(x);
+            int position = card.isDismissing ? card.position : mStack.getPositionOfCard(x);
+            if (position < adapter.getCount()) {
+                mRenderer.drawCard(canvas, card, adapter.getItem(position));
+            }
+        }
+    }
+
+    /**
+     * Passes the gestures which start on the top card to the swipe helper.
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        CardState topCard = mStack.getTopCard();
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            mTouchedCard = topCard != null && topCard.containsPoint(event.getX(), event.getY())
+                    ? topCard : null;
+        }
+        if (mTouchedCard == null || mTouchedCard != topCard) return false;
+
+        // Like a card view, the swipe helper gets the coordinates relative to the card
+        float x = event.getX();
+        float y = event.getY();
+        event.setLocation(x - mTouchedCard.getX(), y - mTouchedCard.getY());
+        boolean isHandled = mStack.getSwipeHelper().onTouch(mStack, event);
+        event.setLocation(x, y);
+
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mTouchedCard = null;
+        }
+        return isHandled;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Finds the cards of a stack which are completely covered by a single card
+ * above them, taking the current transforms into account. Cards are treated as
+ * opaque rectangles, so only fully opaque cards count as covering.
+ */
+class OcclusionCuller {
+
+    private static final int CORNERS = 8;
+
+    private float[] mCorners = new float[CORNERS * 4];
+    private boolean[] mIsOccluder = new boolean[4];
+
+    /**
+     * Updates {@link CardState#isOccluded} of all children of the parent.
+     *
+     * @return The number of occluded children.
+     */
+    int update(ViewGroup parent) {
+        int childCount = parent.getChildCount();
+        if (mIsOccluder.length < childCount) {
+            mCorners = new float[CORNERS * childCount];
+            mIsOccluder = new boolean[childCount];
+        }
+
+        int occludedCount = 0;
+        for (int x = childCount - 1; x >= 0; x--) {
+            View child = parent.getChildAt(x);
+            CardState state = CardState.get(child);
+            mapCorners(child, x * CORNERS);
+
+            state.isOccluded = false;
+            for (int y = x + 1; y < childCount; y++) {
+                if (mIsOccluder[y] && containsCorners(mCorners, y * CORNERS, x * CORNERS)) {
+                    state.isOccluded = true;
+                    occludedCount++;
+                    break;
+                }
+            }
+
+            mIsOccluder[x] = !state.isOccluded && child.getVisibility() == View.VISIBLE
+                    && child.getAlpha() >= 1f && child.getWidth() > 0 && child.getHeight() > 0;
+        }
+        return occludedCount;
+    }
+
+    /**
+     * Stores the corners of the child in parent coordinates, in clockwise order.
+     */
+    private void mapCorners(View child, int offset) {
+        float[] corners = mCorners;
+        corners[offset] = 0;
+        corners[offset + 1] = 0;
+        corners[offset + 2] = child.getWidth();
+        corners[offset + 3] = 0;
+        corners[offset + 4] = child.getWidth();
+        corners[offset + 5] = child.getHeight();
+        corners[offset + 6] = 0;
+        corners[offset + 7] = child.getHeight();
+
+        if (!child.getMatrix().isIdentity()) {
+            child.getMatrix().mapPoints(corners, offset, corners, offset, 4);
+        }
+
+        for (int i = 0; i < CORNERS; i += 2) {
+            corners[offset + i] += child.getLeft();
+            corners[offset + i + 1] += child.getTop();
+        }
+    }
+
+    /**
+     * Returns whether all corners of the inner quad lie within the outer quad.
+     * Both are convex, so this means the inner quad is covered completely.
+     *
+     * @param corners The corners of both quads, in clockwise order.
+     * @param outer   The offset of the outer quad's first corner in the array.
+     * @param inner   The offset of the inner quad's first corner in the array.
+     */
+    static boolean containsCorners(float[] corners, int outer, int inner) {
+        for (int i = 0; i < CORNERS; i += 2) {
+            float px = corners[inner + i];
+            float py = corners[inner + i + 1];
+
+            for (int edge = 0; edge < CORNERS; edge += 2) {
+                int next = (edge + 2) % CORNERS;
+                float ax = corners[outer + edge];
+                float ay = corners[outer + edge + 1];
+                float bx = corners[outer + next];
+                float by = corners[outer + next + 1];
+
+                // A negative cross product puts the point left of a clockwise edge
+                if ((bx - ax) * (py - ay) - (by - ay) * (px - ax) < 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
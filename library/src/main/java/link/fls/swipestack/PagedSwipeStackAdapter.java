@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.List;
+
+/**
+ * Adapter for data which is loaded page by page, e.g. from a backend.
+ * <p>
+ * Unless the end of the data has been reached, the adapter reports one page of
+ * loading placeholders behind the loaded items, so the stack never runs empty
+ * while more data is on its way. As soon as the stack position gets within the
+ * low watermark of the last loaded item, {@link #onLoadPage(int)} is called.
+ * Pages far enough behind the stack position are released, so memory stays
+ * flat no matter how many items have been swiped.
+ * </p>
+ *
+ * @param <T> The type of the items.
+ */
+public abstract class PagedSwipeStackAdapter<T> extends SwipeStackAdapter {
+
+    public static final int VIEW_TYPE_ITEM = 0;
+    public static final int VIEW_TYPE_LOADING = 1;
+
+    private final SparseArray<List<T>> mPages = new SparseArray<>();
+    private final int mPageSize;
+
+    private int mLowWatermark;
+    private int mRetainedPagesBehind = 1;
+    private int mLoadedCount;
+    private int mPosition;
+    private boolean mIsLoading;
+    private boolean mIsEndReached;
+
+    /**
+     * @param pageSize     The number of items per page.
+     * @param lowWatermark The number of loaded items left in front of the stack
+     *                     position at which the next page is requested.
+     */
+    public PagedSwipeStackAdapter(int pageSize, int lowWatermark) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than 0");
+        }
+        mPageSize = pageSize;
+        mLowWatermark = lowWatermark;
+    }
+
+    /**
+     * Called when the next page should be loaded. Deliver the result with
+     * {@link #setPage(int, List)} or report an error with {@link #onPageLoadFailed(int)}.
+     *
+     * @param page The index of the page to load.
+     */
+    protected abstract void onLoadPage(int page);
+
+    /**
+     * Get a view that displays a loaded item.
+     */
+    protected abstract View getItemView(int position, T item, View convertView, ViewGroup parent);
+
+    /**
+     * Get a view that is shown while the item at the given position is still loading.
+     */
+    protected abstract View getLoadingView(int position, View convertView, ViewGroup parent);
+
+    /**
+     * Delivers the items of a page. A page with less items than the page size
+     * marks the end of the data. Must be called on the main thread.
+     *
+     * @param page  The index of the page which has been loaded.
+     * @param items The items of the page.
+     */
+    public void setPage(int page, List<T> items) {
+        int positionStart = page * mPageSize;
+        if (positionStart != mLoadedCount) {
+            throw new IllegalStateException("Page " + page + " was not requested");
+        }
+
+        mIsLoading = false;
+        mPages.put(page, items);
+        mLoadedCount += items.size();
+
+        if (!items.isEmpty()) {
+            notifyItemRangeChanged(positionStart, items.size());
+        }
+
+        if (items.size() < mPageSize) {
+            mIsEndReached = true;
+            notifyItemRangeRemoved(mLoadedCount, mPageSize - items.size());
+        } else {
+            notifyItemRangeInserted(mLoadedCount, mPageSize);
+            loadIfNeeded();
+        }
+    }
+
+    /**
+     * Reports that loading a page failed. The page is requested again
+     * the next time the stack position changes.
+     *
+     * @param page The index of the page which could not be loaded.
+     */
+    public void onPageLoadFailed(int page) {
+        mIsLoading = false;
+    }
+
+    /**
+     * Returns the item at the given position or null if it is not loaded (anymore).
+     */
+    @Override
+    public T getItem(int position) {
+        List<T> page = mPages.get(position / mPageSize);
+        int index = position % mPageSize;
+        return page != null && index < page.size() ? page.get(index) : null;
+    }
+
+    /**
+     * Returns whether the item at the given position is loaded.
+     */
+    public boolean isLoaded(int position) {
+        return position < mLoadedCount && mPages.get(position / mPageSize) != null;
+    }
+
+    /**
+     * Returns whether the next page is currently being loaded.
+     */
+    public boolean isLoading() {
+        return mIsLoading;
+    }
+
+    /**
+     * Returns whether the last page has been loaded.
+     */
+    public boolean isEndReached() {
+        return mIsEndReached;
+    }
+
+    /**
+     * Sets the number of loaded items left in front of the stack position
+     * at which the next page is requested.
+     */
+    public void setLowWatermark(int lowWatermark) {
+        mLowWatermark = lowWatermark;
+        loadIfNeeded();
+    }
+
+    /**
+     * Sets the number of pages kept behind the page of the stack position,
+     * e.g. to be able to undo swipes. Older pages are released.
+     */
+    public void setRetainedPagesBehind(int pages) {
+        mRetainedPagesBehind = pages;
+        releasePagesBehind();
+    }
+
+    @Override
+    public int getCount() {
+        return mIsEndReached ? mLoadedCount : mLoadedCount + mPageSize;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 2;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return isLoaded(position) ? VIEW_TYPE_ITEM : VIEW_TYPE_LOADING;
+    }
+
+    @Override
+    public final View getView(int position, View convertView, ViewGroup parent) {
+        T item = getItem(position);
+        if (item == null) {
+            return getLoadingView(position, convertView, parent);
+        }
+        return getItemView(position, item, convertView, parent);
+    }
+
+    @Override
+    void onStackPositionChanged(int position) {
+        mPosition = position;
+        releasePagesBehind();
+        loadIfNeeded();
+    }
+
+    private void loadIfNeeded() {
+        if (mIsLoading || mIsEndReached) return;
+
+        if (mPosition + mLowWatermark >= mLoadedCount) {
+            mIsLoading = true;
+            onLoadPage(mLoadedCount / mPageSize);
+        }
+    }
+
+    private void releasePagesBehind() {
+        int firstRetainedPage = mPosition / mPageSize - mRetainedPagesBehind;
+        while (mPages.size() > 0 && mPages.keyAt(0) < firstRetainedPage) {
+            mPages.removeAt(0);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.view.View;
+
+import java.util.ArrayDeque;
+
+/**
+ * Draws cards from a bitmap snapshot instead of their live view hierarchy.
+ * A snapshot is captured the first time a card is drawn and reused until the
+ * card is marked dirty. Bitmaps of released snapshots are kept for reuse.
+ */
+class SnapshotRenderer {
+
+    private static final int MAX_POOLED_BITMAPS = 2;
+
+    private final Canvas mCanvas = new Canvas();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final ArrayDeque<Bitmap> mBitmapPool = new ArrayDeque<>(MAX_POOLED_BITMAPS);
+
+    /**
+     * Draws the child from its snapshot, applying its layout position and transform.
+     *
+     * @return False if the child has no size yet and can't be drawn from a snapshot.
+     */
+    boolean draw(Canvas canvas, View child) {
+        Bitmap snapshot = getSnapshot(child);
+        if (snapshot == null) return false;
+
+        canvas.save();
+        canvas.translate(child.getLeft(), child.getTop());
+        canvas.concat(child.getMatrix());
+        mPaint.setAlpha((int) (child.getAlpha() * 255));
+        canvas.drawBitmap(snapshot, 0, 0, mPaint);
+        canvas.restore();
+        return true;
+    }
+
+    void markDirty(View view) {
+        CardState.get(view).isSnapshotDirty = true;
+    }
+
+    /**
+     * Releases the snapshot of the view, e.g. because it became the top view.
+     */
+    void release(View view) {
+        CardState state = (CardState) view.getTag(R.id.card_state);
+        if (state == null || state.snapshot == null) return;
+
+        if (mBitmapPool.size() < MAX_POOLED_BITMAPS) {
+            mBitmapPool.offer(state.snapshot);
+        } else {
+            state.snapshot.recycle();
+        }
+        state.snapshot = null;
+    }
+
+    long getPoolByteCount() {
+        long bytes = 0;
+        for (Bitmap bitmap : mBitmapPool) {
+            bytes += bitmap.getByteCount();
+        }
+        return bytes;
+    }
+
+    void clearPool() {
+        Bitmap bitmap;
+        while ((bitmap = mBitmapPool.poll()) != null) {
+            bitmap.recycle();
+        }
+    }
+
+    private Bitmap getSnapshot(View view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        if (width == 0 || height == 0) return null;
+
+        CardState state = CardState.get(view);
+        Bitmap snapshot = state.snapshot;
+        if (snapshot != null && !state.isSnapshotDirty
+                && snapshot.getWidth() == width && snapshot.getHeight() == height) {
+            return snapshot;
+        }
+
+        if (snapshot == null || snapshot.getWidth() != width || snapshot.getHeight() != height) {
+            release(view);
+            snapshot = obtainBitmap(width, height);
+            state.snapshot = snapshot;
+        }
+
+        snapshot.eraseColor(Color.TRANSPARENT);
+        mCanvas.setBitmap(snapshot);
+        view.draw(mCanvas);
+        mCanvas.setBitmap(null);
+        state.isSnapshotDirty = false;
+
+        return snapshot;
+    }
+
+    private Bitmap obtainBitmap(int width, int height) {
+        Bitmap bitmap;
+        while ((bitmap = mBitmapPool.poll()) != null) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                return bitmap;
+            }
+            bitmap.recycle();
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+}
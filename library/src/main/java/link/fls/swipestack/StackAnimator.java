@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.Choreographer;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+/**
+ * Moves all cards of a stack towards their targets from a single frame callback,
+ * including the top card when it is reset or dismissed after a swipe. Setting a
+ * new target while a card is still moving continues from its current transform,
+ * so rapid swipes never cancel and restart animators.
+ */
+class StackAnimator implements Choreographer.FrameCallback {
+
+    private final SwipeStack mParent;
+    private final Interpolator mInterpolator = new AccelerateDecelerateInterpolator();
+
+    private long mDurationNanos;
+    private boolean mAdaptiveHwLayers;
+    private boolean mIsFrameCallbackPosted;
+    private boolean mIsPaused;
+
+    StackAnimator(SwipeStack parent) {
+        mParent = parent;
+    }
+
+    void setDuration(int durationMillis) {
+        mDurationNanos = durationMillis * 1000000L;
+    }
+
+    void setAdaptiveHwLayers(boolean enabled) {
+        mAdaptiveHwLayers = enabled;
+    }
+
+    /**
+     * Starts moving the card towards the given transform. Nothing happens if
+     * the card is already moving towards or resting at the same transform,
+     * even if it uses a different duration and interpolator to get there.
+     */
+    void animateTo(CardState state, float x, float y, float scale, float alpha,
+                   float rotation) {
+        if (state.hasTarget(x, y, scale, alpha, rotation)
+                && (state.isAnimating || isAtTarget(state))) {
+            return;
+        }
+
+        start(state, x, y, scale, alpha, rotation, mDurationNanos, mInterpolator);
+    }
+
+    /**
+     * Starts moving the card towards the given transform with its own duration
+     * and interpolator, e.g. to reset or dismiss the top card after a swipe.
+     */
+    void animateTo(CardState state, float x, float y, float scale, float alpha,
+                   float rotation, int durationMillis, Interpolator interpolator) {
+        start(state, x, y, scale, alpha, rotation, durationMillis * 1000000L, interpolator);
+    }
+
+    private void start(CardState state, float x, float y, float scale, float alpha,
+                       float rotation, long durationNanos, Interpolator interpolator) {
+        state.startX = state.getX();
+        state.startY = state.getY();
+        state.startScale = state.getScale();
+        state.startAlpha = state.getAlpha();
+        state.startRotation = state.getRotation();
+        state.targetX = x;
+        state.targetY = y;
+        state.targetScale = scale;
+        state.targetAlpha = alpha;
+        state.targetRotation = rotation;
+        // Starts with the next frame, whose time is only known in the frame callback
+        state.animationStartNanos = -1;
+        state.animationDurationNanos = durationNanos;
+        state.interpolator = interpolator;
+
+        if (!state.isAnimating) {
+            state.isAnimating = true;
+            View view = state.view;
+            if (mAdaptiveHwLayers && view != null
+                    && view.getLayerType() == View.LAYER_TYPE_NONE) {
+                state.hasAnimationLayer = true;
+                view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+            }
+        }
+
+        postFrameCallback();
+    }
+
+    private void postFrameCallback() {
+        if (!mIsFrameCallbackPosted && !mIsPaused) {
+            mIsFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Places the card at the given transform without animating it.
+     */
+    void jumpTo(CardState state, float x, float y, float scale, float alpha, float rotation) {
+        state.targetX = x;
+        state.targetY = y;
+        state.targetScale = scale;
+        state.targetAlpha = alpha;
+        state.targetRotation = rotation;
+        apply(state, 1f);
+        finish(state);
+    }
+
+    /**
+     * Stops moving the card. Scale, alpha and rotation jump to their targets,
+     * the position stays where it is, e.g. because the user grabbed the card.
+     */
+    void settle(CardState state) {
+        if (state == null || !state.isAnimating) return;
+
+        state.setScale(state.targetScale);
+        state.setAlpha(state.targetAlpha);
+        state.setRotation(state.targetRotation);
+        finish(state);
+    }
+
+    /**
+     * Forgets the targets of the card, e.g. before it goes into the recycle pool.
+     */
+    void reset(CardState state) {
+        finish(state);
+        state.targetX = Float.NaN;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mIsFrameCallbackPosted = false;
+        boolean isRunning = false;
+        boolean isFinished = false;
+
+        for (int x = 0; x < mParent.getCardCount(); x++) {
+            CardState state = mParent.getCardAt(x);
+            if (state == null || !state.isAnimating) continue;
+
+            if (state.animationStartNanos < 0) state.animationStartNanos = frameTimeNanos;
+            float fraction = state.animationDurationNanos > 0
+                    ? (float) (frameTimeNanos - state.animationStartNanos)
+                    / state.animationDurationNanos
+                    : 1f;
+            fraction = Math.max(0f, Math.min(fraction, 1f));
+
+            apply(state, state.interpolator.getInterpolation(fraction));
+
+            if (fraction < 1f) {
+                isRunning = true;
+            } else {
+                finish(state);
+                isFinished = true;
+            }
+        }
+
+        if (isRunning) postFrameCallback();
+
+        // Cards may leave the stack now, so this waits until the loop is done
+        if (isFinished) mParent.onCardAnimationsEnded();
+    }
+
+    /**
+     * Stops running frames without touching the cards, e.g. while the stack is
+     * detached, so no dismissal is reported before {@link #resume()}.
+     */
+    void pause() {
+        mIsPaused = true;
+        if (mIsFrameCallbackPosted) {
+            mIsFrameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * Continues the animations stopped by {@link #pause()} from the current
+     * transforms of the cards.
+     */
+    void resume() {
+        mIsPaused = false;
+        for (int x = 0; x < mParent.getCardCount(); x++) {
+            CardState state = mParent.getCardAt(x);
+            if (state != null && state.isAnimating) {
+                state.startX = state.getX();
+                state.startY = state.getY();
+                state.startScale = state.getScale();
+                state.startAlpha = state.getAlpha();
+                state.startRotation = state.getRotation();
+                state.animationStartNanos = -1;
+                postFrameCallback();
+            }
+        }
+    }
+
+    /**
+     * Moves all cards to their targets right away and reports the ended
+     * animations to the stack.
+     */
+    void end() {
+        if (mIsFrameCallbackPosted) {
+            mIsFrameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        boolean isFinished = false;
+        for (int x = 0; x < mParent.getCardCount(); x++) {
+            CardState state = mParent.getCardAt(x);
+            if (state != null && state.isAnimating) {
+                apply(state, 1f);
+                finish(state);
+                isFinished = true;
+            }
+        }
+
+        if (isFinished) mParent.onCardAnimationsEnded();
+    }
+
+    private static boolean isAtTarget(CardState state) {
+        return state.getX() == state.targetX && state.getY() == state.targetY
+                && state.getScale() == state.targetScale
+                && state.getAlpha() == state.targetAlpha
+                && state.getRotation() == state.targetRotation;
+    }
+
+    private static void apply(CardState state, float fraction) {
+        state.setX(lerp(state.startX, state.targetX, fraction));
+        state.setY(lerp(state.startY, state.targetY, fraction));
+        state.setScale(lerp(state.startScale, state.targetScale, fraction));
+        state.setAlpha(lerp(state.startAlpha, state.targetAlpha, fraction));
+        state.setRotation(lerp(state.startRotation, state.targetRotation, fraction));
+    }
+
+    private static float lerp(float start, float end, float fraction) {
+        return fraction >= 1f ? end : start + (end - start) * fraction;
+    }
+
+    private static void finish(CardState state) {
+        state.isAnimating = false;
+        if (state.hasAnimationLayer) {
+            state.hasAnimationLayer = false;
+            state.view.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+
+/**
+ * The cards of a {@link SwipeStack}, either views added to the stack or cards the
+ * stack draws itself from a {@link CardModel}. The stack positions, animates and
+ * dismisses cards through their {@link CardState} alike and leaves everything
+ * which depends on the kind of card to this.
+ */
+interface StackCards {
+
+    /**
+     * Returns whether the cards are views, which can be prefetched, given
+     * layers and kept for undo.
+     */
+    boolean hasViews();
+
+    /**
+     * Returns the number of cards, including the ones being dismissed.
+     */
+    int getCount();
+
+    /**
+     * Returns the card at the given index, counting from the bottom of the stack.
+     */
+    CardState getCardAt(int index);
+
+    /**
+     * Adds the card for the given adapter position below the other cards.
+     */
+    CardState addCard(int position);
+
+    /**
+     * Removes a card from the stack which is not shown anymore.
+     */
+    void removeCard(CardState card);
+
+    /**
+     * Removes a card once its dismissal has been reported.
+     */
+    void removeDismissedCard(CardState card);
+
+    /**
+     * Removes all cards, including the ones being dismissed.
+     */
+    void removeAllCards();
+
+    /**
+     * Shows the current data of the given position on the card at the given index.
+     */
+    void rebindCard(int index, int position);
+
+    /**
+     * Called when the data or the adapter changed, before any card is rebound.
+     */
+    void onDataSetChanged();
+
+    /**
+     * Places the card at the given index, which rests at the given left edge.
+     */
+    void layoutCard(int index, int topIndex, int left);
+
+    int getMeasuredWidth(CardState card);
+
+    int getMeasuredHeight(CardState card);
+
+    void draw(Canvas canvas);
+
+    /**
+     * Handles a touch event the stack got itself, i.e. which no card view took.
+     *
+     * @return True if the event was consumed.
+     */
+    boolean onTouchEvent(MotionEvent event);
+}
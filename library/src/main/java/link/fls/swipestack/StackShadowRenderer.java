@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Bitmap;
+import android.graphics.BlurMaskFilter;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Draws one pre-rendered shadow below the static part of a stack. The shadow is
+ * blurred once into a small bitmap which is stretched to any size as a nine
+ * patch, so drawing it costs a few bitmap draws per frame regardless of how
+ * many cards it stands in for.
+ */
+class StackShadowRenderer {
+
+    private static final int SHADOW_COLOR = 0x3D000000;
+
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+    private final int[] mSrcEdges = new int[4];
+    private final float[] mDstEdgesX = new float[4];
+    private final float[] mDstEdgesY = new float[4];
+
+    private Bitmap mShadow;
+    private int mBlurRadius;
+
+    /**
+     * Draws the shadow of a card with the given bounds which is lifted by the
+     * given elevation.
+     */
+    void draw(Canvas canvas, RectF bounds, float elevation) {
+        int blurRadius = Math.round(elevation);
+        if (blurRadius <= 0 || bounds.isEmpty()) return;
+
+        Bitmap shadow = getShadow(blurRadius);
+        int b = blurRadius;
+        int size = shadow.getWidth();
+
+        // The key light comes from above, so the shadow is shifted down a bit
+        float left = bounds.left - b;
+        float top = bounds.top - b + elevation / 2;
+        float right = bounds.right + b;
+        float bottom = bounds.bottom + b + elevation / 2;
+        float innerLeft = Math.min(left + 2 * b, (left + right) / 2);
+        float innerTop = Math.min(top + 2 * b, (top + bottom) / 2);
+        float innerRight = Math.max(right - 2 * b, innerLeft);
+        float innerBottom = Math.max(bottom - 2 * b, innerTop);
+
+        int[] src = mSrcEdges;
+        src[0] = 0;
+        src[1] = 2 * b;
+        src[2] = 2 * b + 1;
+        src[3] = size;
+        float[] dstX = mDstEdgesX;
+        dstX[0] = left;
+        dstX[1] = innerLeft;
+        dstX[2] = innerRight;
+        dstX[3] = right;
+        float[] dstY = mDstEdgesY;
+        dstY[0] = top;
+        dstY[1] = innerTop;
+        dstY[2] = innerBottom;
+        dstY[3] = bottom;
+
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                mSrc.set(src[column], src[row], src[column + 1], src[row + 1]);
+                mDst.set(dstX[column], dstY[row], dstX[column + 1], dstY[row + 1]);
+                if (mDst.width() > 0 && mDst.height() > 0) {
+                    canvas.drawBitmap(shadow, mSrc, mDst, mPaint);
+                }
+            }
+        }
+    }
+
+    int getByteCount() {
+        return mShadow != null ? mShadow.getByteCount() : 0;
+    }
+
+    void release() {
+        if (mShadow != null) {
+            mShadow.recycle();
+            mShadow = null;
+        }
+    }
+
+    /**
+     * Returns a blurred square with a one pixel wide middle row and column,
+     * which are the parts stretched when drawing.
+     */
+    private Bitmap getShadow(int blurRadius) {
+        if (mShadow != null && mBlurRadius == blurRadius) return mShadow;
+
+        release();
+        int size = 4 * blurRadius + 1;
+        Bitmap shadow = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(SHADOW_COLOR);
+        paint.setMaskFilter(new BlurMaskFilter(blurRadius, BlurMaskFilter.Blur.NORMAL));
+        new Canvas(shadow).drawRect(blurRadius, blurRadius,
+                size - blurRadius, size - blurRadius, paint);
+
+        mShadow = shadow;
+        mBlurRadius = blurRadius;
+        return shadow;
+    }
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers the swipe decisions of a {@link SwipeStack} in batches on a background
+ * thread, so expensive handlers like database writes don't hold up the stack.
+ * Attach it with {@link SwipeStack#setSwipeEventChannel(SwipeEventChannel)}.
+ * <p>
+ * Events are delivered in the order they were recorded. Each event is appended
+ * to a small journal file before it is delivered, and the journal is cleared once
+ * all events in it have been delivered. The journal is written on its own
+ * background thread, so neither recording an event nor a slow receiver waits for
+ * the disk. Recording doesn't lock or allocate either, the events are handed to the
+ * journal thread through a fixed ring and the event objects are only created there.
+ * Events which were not delivered when
+ * the process died are delivered again when the next channel is created for the
+ * same file, so a receiver may see an event twice but never loses one.
+ * </p>
+ */
+public class SwipeEventChannel {
+
+    private static final String TAG = "SwipeEventChannel";
+    private static final int RECORD_SIZE = 32;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    // The sequence number and the five event values
+    private static final int RECORDED_FIELDS = 6;
+    private static final int RECORDED_CAPACITY = 256;
+
+    // Journaled events which have not been delivered yet
+    private final ConcurrentLinkedQueue<SwipeEvent> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mIsDrainScheduled = new AtomicBoolean();
+    private final AtomicBoolean mIsClosed = new AtomicBoolean();
+    private final AtomicInteger mDeliveredCount = new AtomicInteger();
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE);
+    private final ExecutorService mExecutor;
+    private final Receiver mReceiver;
+    private final File mJournalFile;
+    private final int mMaxBatchSize;
+    private final Thread mJournalThread;
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // Recorded events which have not been journaled yet, as RECORDED_FIELDS values
+    // each. Only the main thread writes to the tail and only the journal thread
+    // reads from the head, so neither has to lock.
+    private final long[] mRecorded = new long[RECORDED_CAPACITY * RECORDED_FIELDS];
+    private final AtomicLong mRecordedHead = new AtomicLong();
+    private final AtomicLong mRecordedTail = new AtomicLong();
+    // Recorded events which didn't fit into the full ring, in the same layout
+    private final ConcurrentLinkedQueue<long[]> mOverflow = new ConcurrentLinkedQueue<>();
+
+    // Only accessed on the main thread
+    private long mRecordedSequence;
+
+    // Only accessed on the journal thread
+    private FileOutputStream mJournal;
+    private int mJournalCount;
+    private long mJournaledSequence;
+
+    // Only accessed on the delivery thread
+    private List<SwipeEvent> mFailedBatch;
+
+    /**
+     * @param journalFile The file undelivered events are kept in, e.g. in
+     *                    {@link android.content.Context#getFilesDir()}.
+     * @param receiver    Receives the events on a background thread.
+     */
+    public SwipeEventChannel(File journalFile, Receiver receiver) {
+        this(journalFile, receiver, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param journalFile  The file undelivered events are kept in, e.g. in
+     *                     {@link android.content.Context#getFilesDir()}.
+     * @param receiver     Receives the events on a background thread.
+     * @param maxBatchSize The maximum number of events delivered at once.
+     */
+    public SwipeEventChannel(File journalFile, Receiver receiver, int maxBatchSize) {
+        mJournalFile = journalFile;
+        mReceiver = receiver;
+        mMaxBatchSize = Math.max(maxBatchSize, 1);
+        mExecutor = newBackgroundExecutor(TAG);
+
+        mJournalThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runJournal();
+            }
+        }, TAG + "-journal");
+        mJournalThread.start();
+    }
+
+    private static ExecutorService newBackgroundExecutor(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, name);
+            }
+        });
+    }
+
+    /**
+     * Records a swipe decision. Called by the {@link SwipeStack} on the main thread.
+     * Events recorded after {@link #close()} are ignored.
+     */
+    void record(int position, long itemId, int direction, long timestamp,
+                long gestureDuration) {
+        if (mIsClosed.get()) return;
+
+        long tail = mRecordedTail.get();
+        long[] recorded;
+        int index;
+        if (tail - mRecordedHead.get() < RECORDED_CAPACITY) {
+            recorded = mRecorded;
+            index = (int) (tail % RECORDED_CAPACITY) * RECORDED_FIELDS;
+        } else {
+            // Only when the journal thread has fallen far behind, e.g. on a slow disk
+            recorded = new long[RECORDED_FIELDS];
+            index = 0;
+        }
+
+        recorded[index] = mRecordedSequence++;
+        recorded[index + 1] = position;
+        recorded[index + 2] = itemId;
+        recorded[index + 3] = direction;
+        recorded[index + 4] = timestamp;
+        recorded[index + 5] = gestureDuration;
+
+        if (recorded == mRecorded) {
+            mRecordedTail.lazySet(tail + 1);
+        } else {
+            mOverflow.offer(recorded);
+        }
+        LockSupport.unpark(mJournalThread);
+    }
+
+    /**
+     * Removes the next recorded event in sequence from the ring or the overflow
+     * and returns it, or null if it hasn't been recorded yet. Runs on the journal
+     * thread.
+     */
+    private SwipeEvent pollRecorded() {
+        // Looks at the overflow first, so the ring events recorded before it are seen
+        long[] overflowed = mOverflow.peek();
+        long head = mRecordedHead.get();
+        if (head < mRecordedTail.get()) {
+            int index = (int) (head % RECORDED_CAPACITY) * RECORDED_FIELDS;
+            if (mRecorded[index] == mJournaledSequence) {
+                SwipeEvent event = newSwipeEvent(mRecorded, index);
+                mRecordedHead.lazySet(head + 1);
+                mJournaledSequence++;
+                return event;
+            }
+        }
+        if (overflowed != null && overflowed[0] == mJournaledSequence) {
+            mOverflow.poll();
+            mJournaledSequence++;
+            return newSwipeEvent(overflowed, 0);
+        }
+        return null;
+    }
+
+    private static SwipeEvent newSwipeEvent(long[] recorded, int index) {
+        return new SwipeEvent((int) recorded[index + 1], recorded[index + 2],
+                (int) recorded[index + 3], recorded[index + 4], recorded[index + 5]);
+    }
+
+    /**
+     * Retries the delivery of events which the receiver failed to handle.
+     */
+    public void retry() {
+        scheduleDrain();
+    }
+
+    /**
+     * Delivers the remaining events and stops the background threads.
+     * Events recorded afterwards are ignored.
+     */
+    public void close() {
+        if (!mIsClosed.compareAndSet(false, true)) return;
+
+        LockSupport.unpark(mJournalThread);
+    }
+
+    /**
+     * Replays the journal, then journals the recorded events whenever there are
+     * new ones or delivered ones to clear, until the channel is closed. Runs on
+     * the journal thread.
+     */
+    private void runJournal() {
+        // Runs before any recorded event is journaled, so the order is kept
+        replayJournal();
+
+        while (!mIsClosed.get()) {
+            writeJournal();
+            // Returns right away if it was unparked since the events were polled
+            LockSupport.park(this);
+
+            if (Thread.interrupted()) {
+                // Shuts down like close(), so the delivery thread doesn't leak
+                mIsClosed.set(true);
+            }
+        }
+
+        // Journals the last recorded events and waits for their delivery,
+        // so the journal can be cleared before it is closed
+        writeJournal();
+        mExecutor.execute(mDrainRunnable);
+        mExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeJournal();
+        closeJournal();
+    }
+
+    private void scheduleJournal() {
+        LockSupport.unpark(mJournalThread);
+    }
+
+    private static void schedule(ExecutorService executor, AtomicBoolean isScheduled,
+                                 Runnable runnable) {
+        if (isScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(runnable);
+            } catch (RuntimeException e) {
+                // The channel has been closed, the events stay in the journal
+                isScheduled.set(false);
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        schedule(mExecutor, mIsDrainScheduled, mDrainRunnable);
+    }
+
+    /**
+     * Clears the journal once everything in it has been delivered, then journals
+     * the recorded events and queues them for delivery. Runs on the journal thread.
+     */
+    private void writeJournal() {
+        if (mJournalCount > 0 && mDeliveredCount.get() >= mJournalCount) {
+            truncateJournal();
+        }
+
+        boolean isQueued = false;
+        SwipeEvent event;
+        while ((event = pollRecorded()) != null) {
+            appendToJournal(event);
+            mQueue.offer(event);
+            isQueued = true;
+        }
+
+        if (isQueued) scheduleDrain();
+    }
+
+    /**
+     * Appends the event to the journal. This is a single small write without
+     * a sync, so it survives the process but not necessarily a power loss.
+     */
+    private void appendToJournal(SwipeEvent event) {
+        // Counted even if the write fails, as it is delivered all the same
+        mJournalCount++;
+        try {
+            if (mJournal == null) {
+                mJournal = new FileOutputStream(mJournalFile, true);
+            }
+
+            mRecord.clear();
+            mRecord.putInt(event.getPosition());
+            mRecord.putLong(event.getItemId());
+            mRecord.putInt(event.getDirection());
+            mRecord.putLong(event.getTimestamp());
+            mRecord.putLong(event.getGestureDuration());
+            mJournal.write(mRecord.array(), 0, RECORD_SIZE);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not journal swipe event", e);
+        }
+    }
+
+    /**
+     * Queues the events left in the journal by a previous process. The journal
+     * only holds a few undelivered events, so this is a small read.
+     */
+    private void replayJournal() {
+        if (!mJournalFile.exists()) return;
+
+        DataInputStream input = null;
+        int count = 0;
+        try {
+            input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(mJournalFile)));
+            while (true) {
+                mQueue.offer(new SwipeEvent(input.readInt(), input.readLong(),
+                        input.readInt(), input.readLong(), input.readLong()));
+                count++;
+            }
+        } catch (EOFException e) {
+            // Done
+        } catch (IOException e) {
+            Log.w(TAG, "Could not replay swipe events", e);
+        } finally {
+            closeQuietly(input);
+        }
+
+        try {
+            // Drops a partially written last record, which would corrupt the next ones
+            mJournal = new FileOutputStream(mJournalFile, true);
+            mJournal.getChannel().truncate((long) count * RECORD_SIZE);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not open swipe event journal", e);
+        }
+        mJournalCount = count;
+
+        if (count > 0) scheduleDrain();
+    }
+
+    private void drain() {
+        mIsDrainScheduled.set(false);
+
+        while (true) {
+            List<SwipeEvent> batch = mFailedBatch;
+            mFailedBatch = null;
+            if (batch == null) {
+                SwipeEvent event = mQueue.poll();
+                if (event == null) return;
+
+                batch = new ArrayList<>(Math.min(mQueue.size() + 1, mMaxBatchSize));
+                batch.add(event);
+                while (batch.size() < mMaxBatchSize && (event = mQueue.poll()) != null) {
+                    batch.add(event);
+                }
+            }
+
+            try {
+                mReceiver.onSwipeEvents(batch);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Delivering swipe events failed, waiting for retry()", e);
+                mFailedBatch = batch;
+                return;
+            }
+
+            // The journal thread clears the journal once everything is delivered
+            mDeliveredCount.addAndGet(batch.size());
+            scheduleJournal();
+        }
+    }
+
+    private void truncateJournal() {
+        try {
+            if (mJournal != null) {
+                mJournal.getChannel().truncate(0);
+            } else {
+                mJournalFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not truncate swipe event journal", e);
+        }
+        mDeliveredCount.addAndGet(-mJournalCount);
+        mJournalCount = 0;
+    }
+
+    private void closeJournal() {
+        closeQuietly(mJournal);
+        mJournal = null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * A swipe decision of the user or a programmatic swipe.
+     */
+    public static class SwipeEvent {
+
+        private final int mPosition;
+        private final long mItemId;
+        private final int mDirection;
+        private final long mTimestamp;
+        private final long mGestureDuration;
+
+        SwipeEvent(int position, long itemId, int direction, long timestamp,
+                   long gestureDuration) {
+            mPosition = position;
+            mItemId = itemId;
+            mDirection = direction;
+            mTimestamp = timestamp;
+            mGestureDuration = gestureDuration;
+        }
+
+        /**
+         * Returns the adapter position of the view at the time it was swiped.
+         */
+        public int getPosition() {
+            return mPosition;
+        }
+
+        /**
+         * Returns the {@link android.widget.Adapter#getItemId(int)} of the swiped item.
+         */
+        public long getItemId() {
+            return mItemId;
+        }
+
+        /**
+         * Returns {@link SwipeStack#SWIPE_DIRECTION_ONLY_LEFT} or
+         * {@link SwipeStack#SWIPE_DIRECTION_ONLY_RIGHT}.
+         */
+        public int getDirection() {
+            return mDirection;
+        }
+
+        /**
+         * Returns the wall clock time of the decision in milliseconds.
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * Returns the time from touching the view until releasing it in
+         * milliseconds, or 0 for programmatic swipes.
+         */
+        public long getGestureDuration() {
+            return mGestureDuration;
+        }
+    }
+
+    /**
+     * Interface definition for a receiver of swipe events. It is called on a
+     * background thread, one batch at a time. If it throws, the batch is delivered
+     * again after {@link #retry()} or with the next recorded event.
+     */
+    public interface Receiver {
+        void onSwipeEvents(List<SwipeEvent> events);
+    }
+}
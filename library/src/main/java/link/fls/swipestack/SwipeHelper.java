@@ -16,24 +16,58 @@
 
 package link.fls.swipestack;
 
-import android.animation.Animator;
+import android.view.Choreographer;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
 import android.view.animation.OvershootInterpolator;
 
-import link.fls.swipestack.util.AnimationUtils;
-
 public class SwipeHelper implements View.OnTouchListener {
 
+    private static final float MAX_PREDICTION_DISTANCE_DP = 24;
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667;
+
     private final SwipeStack mSwipeStack;
-    private View mObservedView;
+    private final Interpolator mResetInterpolator = new OvershootInterpolator(1.4f);
+    private final Interpolator mSwipeInterpolator = new AccelerateDecelerateInterpolator();
+    private final Interpolator mFlingInterpolator = new DecelerateInterpolator();
+    private final Choreographer.FrameCallback mMoveCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    mIsMoveScheduled = false;
+                    applyPendingMove(frameTimeNanos);
+                }
+            };
+
+    private final float[] mPrediction = new float[2];
+
+    private CardState mObservedCard;
+    private VelocityTracker mVelocityTracker;
+    private TouchPredictor mTouchPredictor;
 
     private boolean mListenForTouchEvents;
+    private boolean mAdaptiveHwLayers;
+    private boolean mIsFirstMove;
+    private boolean mIsDragging;
+    private boolean mIsReleasing;
+    private boolean mIsMoveScheduled;
+    private boolean mHasPendingMove;
     private float mDownX;
     private float mDownY;
     private float mInitialX;
     private float mInitialY;
+    private float mInitialRotation;
+    private float mPendingX;
+    private float mPendingY;
     private int mPointerId;
+    private float mMinFlingVelocity;
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    private float mMaxFlingVelocity;
 
     private float mRotateDegrees = SwipeStack.DEFAULT_SWIPE_ROTATION;
     private float mOpacityEnd = SwipeStack.DEFAULT_SWIPE_OPACITY;
@@ -41,6 +75,8 @@ public class SwipeHelper implements View.OnTouchListener {
 
     public SwipeHelper(SwipeStack swipeStack) {
         mSwipeStack = swipeStack;
+        mMaxFlingVelocity =
+                ViewConfiguration.get(swipeStack.getContext()).getScaledMaximumFlingVelocity();
     }
 
     @Override
@@ -54,9 +90,34 @@ public class SwipeHelper implements View.OnTouchListener {
 
                 v.getParent().requestDisallowInterceptTouchEvent(true);
                 mSwipeStack.onSwipeStart();
+
+                View observedView = mObservedCard.view;
+                if (mAdaptiveHwLayers && observedView != null
+                        && observedView.getLayerType() == View.LAYER_TYPE_NONE) {
+                    // The stack animator drops the layer once the view is reset or dismissed
+                    mObservedCard.hasAnimationLayer = true;
+                    observedView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+                }
+
                 mPointerId = event.getPointerId(0);
-                mDownX = event.getX(mPointerId);
-                mDownY = event.getY(mPointerId);
+                mDownX = event.getX(0);
+                mDownY = event.getY(0);
+                mPendingX = mObservedCard.getX();
+                mPendingY = mObservedCard.getY();
+                mHasPendingMove = false;
+                if (mTouchPredictor != null) {
+                    mTouchPredictor.reset();
+                    mTouchPredictor.addSample(mPendingX, mPendingY, event.getEventTime());
+                }
+                mIsFirstMove = true;
+                mIsDragging = true;
+
+                if (mVelocityTracker == null) {
+                    mVelocityTracker = VelocityTracker.obtain();
+                } else {
+                    mVelocityTracker.clear();
+                }
+                addMovement(event);
 
                 return true;
 
@@ -64,37 +125,50 @@ public class SwipeHelper implements View.OnTouchListener {
                 int pointerIndex = event.findPointerIndex(mPointerId);
                 if (pointerIndex < 0) return false;
 
-                float dx = event.getX(pointerIndex) - mDownX;
-                float dy = event.getY(pointerIndex) - mDownY;
+                addMovement(event);
 
-                float newX = mObservedView.getX() + dx;
-                float newY = mObservedView.getY() + dy;
+                if (mIsFirstMove) {
+                    mIsFirstMove = false;
+                    SwipeStackMetrics metrics = mSwipeStack.getMetrics();
+                    if (metrics != null) metrics.recordTouchLatency(event.getEventTime());
+                }
 
-                mObservedView.setX(newX);
-                mObservedView.setY(newY);
+                // The event is relative to the view as it is drawn right now,
+                // which lags behind the moves that are still pending
+                mPendingX = mObservedCard.getX() + event.getX(pointerIndex) - mDownX;
+                mPendingY = mObservedCard.getY() + event.getY(pointerIndex) - mDownY;
+                if (mTouchPredictor != null) addPredictorSamples(event, pointerIndex);
+                scheduleMove();
 
-                float dragDistanceX = newX - mInitialX;
-                float swipeProgress = Math.min(Math.max(
-                        dragDistanceX / mSwipeStack.getWidth(), -1), 1);
+                return true;
 
-                mSwipeStack.onSwipeProgress(swipeProgress);
+            case MotionEvent.ACTION_UP:
+                mIsDragging = false;
+                v.getParent().requestDisallowInterceptTouchEvent(false);
 
-                if (mRotateDegrees > 0) {
-                    float rotation = mRotateDegrees * swipeProgress;
-                    mObservedView.setRotation(rotation);
+                // The event is relative to the view as it is drawn right now,
+                // so it has to be tracked before the pending move is applied
+                addMovement(event);
+                float velocityX = 0;
+                if (mVelocityTracker != null) {
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                    velocityX = mVelocityTracker.getXVelocity(mPointerId);
                 }
 
-                if (mOpacityEnd < 1f) {
-                    float alpha = 1 - Math.min(Math.abs(swipeProgress * 2), 1);
-                    mObservedView.setAlpha(alpha);
-                }
+                flushPendingMove();
+                mSwipeStack.onSwipeEnd();
+                mIsReleasing = true;
+                checkViewPosition(velocityX);
+                mIsReleasing = false;
 
                 return true;
 
-            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mIsDragging = false;
                 v.getParent().requestDisallowInterceptTouchEvent(false);
+                cancelPendingMove();
                 mSwipeStack.onSwipeEnd();
-                checkViewPosition();
+                resetViewPosition(0);
 
                 return true;
 
@@ -103,87 +177,286 @@ public class SwipeHelper implements View.OnTouchListener {
         return false;
     }
 
-    private void checkViewPosition() {
+    /**
+     * Applies the latest move on the next frame. Moves arriving before that
+     * frame replace the pending one, so the view and the progress listener are
+     * updated once per frame. The velocity tracker still gets every sample.
+     */
+    private void scheduleMove() {
+        if (mHasPendingMove) {
+            SwipeStackMetrics metrics = mSwipeStack.getMetrics();
+            if (metrics != null) metrics.recordCoalescedMove();
+        }
+        mHasPendingMove = true;
+
+        if (!mIsMoveScheduled) {
+            mIsMoveScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mMoveCallback);
+        }
+    }
+
+    /**
+     * Feeds the historical and the current samples of the event to the predictor.
+     */
+    private void addPredictorSamples(MotionEvent event, int pointerIndex) {
+        SwipeStackMetrics metrics = mSwipeStack.getMetrics();
+        float offsetX = mObservedCard.getX() - mDownX;
+        float offsetY = mObservedCard.getY() - mDownY;
+
+        for (int h = 0; h < event.getHistorySize(); h++) {
+            float error = mTouchPredictor.addSample(
+                    offsetX + event.getHistoricalX(pointerIndex, h),
+                    offsetY + event.getHistoricalY(pointerIndex, h),
+                    event.getHistoricalEventTime(h));
+            if (metrics != null && error >= 0) metrics.recordPredictionError(error);
+        }
+
+        float error = mTouchPredictor.addSample(mPendingX, mPendingY, event.getEventTime());
+        if (metrics != null && error >= 0) metrics.recordPredictionError(error);
+    }
+
+    private void flushPendingMove() {
+        cancelMoveCallback();
+        if (mTouchPredictor != null) {
+            // The view may be ahead of the finger, put it where the finger really is
+            mHasPendingMove = true;
+        }
+        applyPendingMove(0);
+    }
+
+    private void cancelPendingMove() {
+        cancelMoveCallback();
+        mHasPendingMove = false;
+    }
+
+    private void cancelMoveCallback() {
+        if (mIsMoveScheduled) {
+            mIsMoveScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(mMoveCallback);
+        }
+    }
+
+    /**
+     * @param frameTimeNanos The time of the frame the move is drawn in, used to
+     *                       predict the position once it is displayed, or 0 to
+     *                       apply the last actual position.
+     */
+    private void applyPendingMove(long frameTimeNanos) {
+        if (!mHasPendingMove || mObservedCard == null) return;
+        mHasPendingMove = false;
+
+        float x = mPendingX;
+        float y = mPendingY;
+        if (mTouchPredictor != null && frameTimeNanos > 0) {
+            // The frame is displayed about one frame interval after it started
+            long displayTimeMillis = (frameTimeNanos + mFrameIntervalNanos) / 1000000L;
+            mTouchPredictor.predict(displayTimeMillis, mPrediction);
+            x = mPrediction[0];
+            y = mPrediction[1];
+        }
+
+        mObservedCard.setX(x);
+        mObservedCard.setY(y);
+
+        float dragDistanceX = x - mInitialX;
+        float swipeProgress = Math.min(Math.max(
+                dragDistanceX / mSwipeStack.getWidth(), -1), 1);
+
+        mSwipeStack.onSwipeProgress(swipeProgress);
+
+        if (mRotateDegrees > 0) {
+            float rotation = mInitialRotation + mRotateDegrees * swipeProgress;
+            mObservedCard.setRotation(rotation);
+        }
+
+        if (mOpacityEnd < 1f) {
+            float alpha = 1 - Math.min(Math.abs(swipeProgress * 2), 1);
+            mObservedCard.setAlpha(alpha);
+        }
+    }
+
+    /**
+     * Feeds the event to the velocity tracker in the coordinates of the parent,
+     * since the event coordinates are relative to the card which moves along.
+     */
+    private void addMovement(MotionEvent event) {
+        // Released while the stack was detached in the middle of a gesture
+        if (mVelocityTracker == null) return;
+
+        float offsetX = mObservedCard.getX();
+        float offsetY = mObservedCard.getY();
+        event.offsetLocation(offsetX, offsetY);
+        mVelocityTracker.addMovement(event);
+        event.offsetLocation(-offsetX, -offsetY);
+    }
+
+    private void checkViewPosition(float velocityX) {
         if(!mSwipeStack.isEnabled()) {
-            resetViewPosition();
+            resetViewPosition(0);
             return;
         }
 
-        float viewCenterHorizontal = mObservedView.getX() + (mObservedView.getWidth() / 2);
+        float viewCenterHorizontal = mObservedCard.getX() + (mObservedCard.getWidth() / 2);
         float parentFirstThird = mSwipeStack.getWidth() / 3f;
         float parentLastThird = parentFirstThird * 2;
+        boolean canSwipeLeft =
+                mSwipeStack.getAllowedSwipeDirections() != SwipeStack.SWIPE_DIRECTION_ONLY_RIGHT;
+        boolean canSwipeRight =
+                mSwipeStack.getAllowedSwipeDirections() != SwipeStack.SWIPE_DIRECTION_ONLY_LEFT;
+        boolean isFling = Math.abs(velocityX) >= mMinFlingVelocity;
+
+        if (viewCenterHorizontal < parentFirstThird && canSwipeLeft) {
+            swipeViewToLeft(velocityX);
+        } else if (viewCenterHorizontal > parentLastThird && canSwipeRight) {
+            swipeViewToRight(velocityX);
+        } else if (isFling && velocityX < 0 && canSwipeLeft
+                && viewCenterHorizontal < parentLastThird) {
+            swipeViewToLeft(velocityX);
+        } else if (isFling && velocityX > 0 && canSwipeRight
+                && viewCenterHorizontal > parentFirstThird) {
+            swipeViewToRight(velocityX);
+        } else {
+            resetViewPosition(velocityX);
+        }
+    }
+
+    /**
+     * Returns the duration of a decelerating animation over the given distance
+     * which starts with the given velocity, clamped to [minDuration, maxDuration].
+     */
+    private static int getFlingDuration(float distance, float velocity,
+                                        int minDuration, int maxDuration) {
+        if (velocity == 0) return maxDuration;
+
+        // A DecelerateInterpolator starts with twice the average speed
+        int duration = (int) (2000 * Math.abs(distance / velocity));
+        return Math.max(minDuration, Math.min(duration, maxDuration));
+    }
 
-        if (viewCenterHorizontal < parentFirstThird &&
-                mSwipeStack.getAllowedSwipeDirections() != SwipeStack.SWIPE_DIRECTION_ONLY_RIGHT) {
-            swipeViewToLeft(mAnimationDuration / 2);
-        } else if (viewCenterHorizontal > parentLastThird &&
-                mSwipeStack.getAllowedSwipeDirections() != SwipeStack.SWIPE_DIRECTION_ONLY_LEFT) {
-            swipeViewToRight(mAnimationDuration / 2);
+    private void resetViewPosition(float velocityX) {
+        float distance = mObservedCard.getX() - mInitialX;
+        int duration = mAnimationDuration;
+        if (Math.abs(velocityX) >= mMinFlingVelocity && distance * velocityX < 0) {
+            duration = getFlingDuration(distance, velocityX,
+                    mAnimationDuration / 3, mAnimationDuration);
+        }
+
+        mSwipeStack.getStackAnimator().animateTo(mObservedCard, mInitialX, mInitialY,
+                mObservedCard.getScale(), 1, mInitialRotation, duration, mResetInterpolator);
+    }
+
+    private void swipeViewToLeft(float velocityX) {
+        if (velocityX < -mMinFlingVelocity) {
+            swipeViewToLeft(getFlingDuration(mSwipeStack.getWidth(), velocityX,
+                    mAnimationDuration / 6, mAnimationDuration / 2), mFlingInterpolator);
         } else {
-            resetViewPosition();
+            swipeViewToLeft(mAnimationDuration / 2, mSwipeInterpolator);
         }
     }
 
-    private void resetViewPosition() {
-        mObservedView.animate()
-                .x(mInitialX)
-                .y(mInitialY)
-                .rotation(0)
-                .alpha(1)
-                .setDuration(mAnimationDuration)
-                .setInterpolator(new OvershootInterpolator(1.4f))
-                .setListener(null);
+    private void swipeViewToRight(float velocityX) {
+        if (velocityX > mMinFlingVelocity) {
+            swipeViewToRight(getFlingDuration(mSwipeStack.getWidth(), velocityX,
+                    mAnimationDuration / 6, mAnimationDuration / 2), mFlingInterpolator);
+        } else {
+            swipeViewToRight(mAnimationDuration / 2, mSwipeInterpolator);
+        }
     }
 
-    private void swipeViewToLeft(int duration) {
-        if (!mListenForTouchEvents) return;
-        mListenForTouchEvents = false;
-        mObservedView.animate().cancel();
-        mObservedView.animate()
-                .x(-mSwipeStack.getWidth() + mObservedView.getX())
-                .rotation(-mRotateDegrees)
-                .alpha(0f)
-                .setDuration(duration)
-                .setListener(new AnimationUtils.AnimationEndListener() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        mSwipeStack.onViewSwipedToLeft();
-                    }
-                });
-    }
-
-    private void swipeViewToRight(int duration) {
+    private void swipeViewToLeft(int duration, Interpolator interpolator) {
+        swipeView(-mSwipeStack.getWidth(), -mRotateDegrees, duration, interpolator,
+                SwipeStack.SWIPE_DIRECTION_ONLY_LEFT);
+    }
+
+    private void swipeViewToRight(int duration, Interpolator interpolator) {
+        swipeView(mSwipeStack.getWidth(), mRotateDegrees, duration, interpolator,
+                SwipeStack.SWIPE_DIRECTION_ONLY_RIGHT);
+    }
+
+    private void swipeView(float distance, float rotation, int duration,
+                           Interpolator interpolator, int direction) {
         if (!mListenForTouchEvents) return;
         mListenForTouchEvents = false;
-        mObservedView.animate().cancel();
-        mObservedView.animate()
-                .x(mSwipeStack.getWidth() + mObservedView.getX())
-                .rotation(mRotateDegrees)
-                .alpha(0f)
-                .setDuration(duration)
-                .setListener(new AnimationUtils.AnimationEndListener() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        mSwipeStack.onViewSwipedToRight();
-                    }
-                });
+
+        // The stack moves on to the next card right away and reports the
+        // dismissal once the stack animator has moved this one out
+        CardState card = mObservedCard;
+        mSwipeStack.getStackAnimator().animateTo(card, distance + card.getX(), card.getY(),
+                card.getScale(), 0f, rotation, duration, interpolator);
+        mSwipeStack.onCardDismissStarted(card, direction);
     }
 
     public void registerObservedView(View view, float initialX, float initialY) {
+        registerObservedView(view, initialX, initialY, 0);
+    }
+
+    public void registerObservedView(View view, float initialX, float initialY,
+                                     float initialRotation) {
         if (view == null) return;
-        mObservedView = view;
-        mObservedView.setOnTouchListener(this);
+        registerObservedCard(CardState.get(view), initialX, initialY, initialRotation);
+    }
+
+    /**
+     * Observes the given card. Touch events of cards with a view arrive through
+     * the view, the ones of cards drawn by the stack are passed on by the stack.
+     */
+    void registerObservedCard(CardState card, float initialX, float initialY,
+                              float initialRotation) {
+        mObservedCard = card;
+        if (card.view != null) card.view.setOnTouchListener(this);
         mInitialX = initialX;
         mInitialY = initialY;
+        mInitialRotation = initialRotation;
         mListenForTouchEvents = true;
     }
 
+    /**
+     * Returns the velocity tracker to the system pool, e.g. once the stack is
+     * detached. A new one is obtained with the next gesture.
+     */
+    public void release() {
+        cancelPendingMove();
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
     public void unregisterObservedView() {
-        if (mObservedView != null) {
-            mObservedView.setOnTouchListener(null);
+        cancelPendingMove();
+        if (mObservedCard != null && mObservedCard.view != null) {
+            mObservedCard.view.setOnTouchListener(null);
         }
-        mObservedView = null;
+        mObservedCard = null;
         mListenForTouchEvents = false;
+        mIsDragging = false;
+    }
+
+    /**
+     * Returns whether the given card is registered and listens for touch
+     * events at the given initial position.
+     */
+    boolean isObservedCard(CardState card, float initialX, float initialY,
+                           float initialRotation) {
+        return mObservedCard == card && mListenForTouchEvents
+                && mInitialX == initialX && mInitialY == initialY
+                && mInitialRotation == initialRotation;
+    }
+
+    public boolean isDragging() {
+        return mIsDragging;
+    }
+
+    /**
+     * Returns whether the observed view is being released by the user right now,
+     * as opposed to being swiped programmatically.
+     */
+    public boolean isReleasing() {
+        return mIsReleasing;
+    }
+
+    public boolean isDismissing() {
+        return mObservedCard != null && !mListenForTouchEvents;
     }
 
     public void setAnimationDuration(int duration) {
@@ -198,12 +471,43 @@ public class SwipeHelper implements View.OnTouchListener {
         mOpacityEnd = alpha;
     }
 
+    public void setAdaptiveHwLayers(boolean enabled) {
+        mAdaptiveHwLayers = enabled;
+    }
+
+    public void setTouchPrediction(boolean enabled) {
+        if (!enabled) {
+            mTouchPredictor = null;
+        } else if (mTouchPredictor == null) {
+            float density = mSwipeStack.getResources().getDisplayMetrics().density;
+            mTouchPredictor = new TouchPredictor(MAX_PREDICTION_DISTANCE_DP * density);
+        }
+    }
+
+    public boolean isTouchPredictionEnabled() {
+        return mTouchPredictor != null;
+    }
+
+    /**
+     * Sets the refresh rate of the display, which determines how far ahead
+     * the touch position is predicted.
+     */
+    public void setRefreshRate(float refreshRate) {
+        if (refreshRate > 0) {
+            mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        }
+    }
+
+    public void setMinFlingVelocity(float velocity) {
+        mMinFlingVelocity = velocity;
+    }
+
     public void swipeViewToLeft() {
-        swipeViewToLeft(mAnimationDuration);
+        swipeViewToLeft(mAnimationDuration, mSwipeInterpolator);
     }
 
     public void swipeViewToRight() {
-        swipeViewToRight(mAnimationDuration);
+        swipeViewToRight(mAnimationDuration, mSwipeInterpolator);
     }
 
 }
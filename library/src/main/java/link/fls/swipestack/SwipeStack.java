@@ -16,27 +16,47 @@
 
 package link.fls.swipestack;
 
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.RectF;
 import android.database.DataSetObserver;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.WindowManager;
 import android.widget.Adapter;
 import android.widget.FrameLayout;
 
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.Random;
 
+import link.fls.swipestack.util.BitmapCache;
+
 public class SwipeStack extends ViewGroup {
 
     public static final int SWIPE_DIRECTION_BOTH = 0;
     public static final int SWIPE_DIRECTION_ONLY_LEFT = 1;
     public static final int SWIPE_DIRECTION_ONLY_RIGHT = 2;
 
+    public static final int SHADOW_MODE_PER_CARD = 0;
+    public static final int SHADOW_MODE_STACK = 1;
+
+    public static final int RENDER_MODE_VIEWS = 0;
+    public static final int RENDER_MODE_CANVAS = 1;
+
     public static final int DEFAULT_ANIMATION_DURATION = 300;
     public static final int DEFAULT_STACK_SIZE = 3;
     public static final int DEFAULT_STACK_ROTATION = 8;
@@ -44,30 +64,101 @@ public class SwipeStack extends ViewGroup {
     public static final float DEFAULT_SWIPE_OPACITY = 1f;
     public static final float DEFAULT_SCALE_FACTOR = 1f;
     public static final boolean DEFAULT_DISABLE_HW_ACCELERATION = true;
+    public static final boolean DEFAULT_ADAPTIVE_HW_LAYERS = false;
+    public static final int DEFAULT_RECYCLE_POOL_SIZE = 2;
+    public static final int DEFAULT_IDLE_PREFETCH_SIZE = 0;
+    public static final int DEFAULT_UNDO_HISTORY_SIZE = 0;
+    public static final boolean DEFAULT_SNAPSHOT_CARDS = false;
+    public static final boolean DEFAULT_OCCLUSION_CULLING = false;
+    public static final int DEFAULT_SHADOW_MODE = SHADOW_MODE_PER_CARD;
+    public static final int DEFAULT_RENDER_MODE = RENDER_MODE_VIEWS;
+    public static final boolean DEFAULT_STAGED_FIRST_RENDER = false;
+    public static final boolean DEFAULT_TOUCH_PREDICTION = false;
+    public static final int DEFAULT_MEDIA_PREFETCH_LOOKAHEAD = 5;
 
     private static final String KEY_SUPER_STATE = "superState";
     private static final String KEY_CURRENT_INDEX = "currentIndex";
+    private static final String KEY_ROTATIONS = "rotations";
+    private static final String KEY_UNDO_POSITIONS = "undoPositions";
+    private static final String KEY_UNDO_DIRECTIONS = "undoDirections";
+    private static final String KEY_UNDO_ROTATIONS = "undoRotations";
 
     private Adapter mAdapter;
     private Random mRandom;
 
     private int mAllowedSwipeDirections;
+    private int mShadowMode;
+    private int mRenderMode;
     private int mAnimationDuration;
     private int mCurrentViewIndex;
     private int mNumberOfStackedViews;
+    private int mIdlePrefetchSize;
+    private int mMediaPrefetchLookahead = DEFAULT_MEDIA_PREFETCH_LOOKAHEAD;
+    private int mMediaPrefetchStart;
+    private int mMediaPrefetchEnd;
+    private int mLastMeasuredWidth;
+    private int mLastMeasuredHeight;
+    private int mRestoredPosition;
+    private int mRestoredUndoCount;
+    private long mGestureStartMillis;
     private int mViewSpacing;
     private int mViewRotation;
     private float mSwipeRotation;
     private float mSwipeOpacity;
     private float mScaleFactor;
+    private float mMinFlingVelocity;
+    private float[] mScaleTable;
+    private float[] mRestoredRotations;
+    private int[] mRestoredUndoPositions;
+    private int[] mRestoredUndoDirections;
+    private float[] mRestoredUndoRotations;
     private boolean mDisableHwAcceleration;
+    private boolean mAdaptiveHwLayers;
+    private boolean mSnapshotCards;
+    private boolean mOcclusionCulling;
     private boolean mIsFirstLayout = true;
-
-    private View mTopView;
+    private boolean mStagedFirstRender;
+    private boolean mTouchPrediction;
+    private boolean mIsStagingStack;
+    private boolean mIsIdlePrefetchScheduled;
+    private boolean mIsDrainingSwipes;
+    private boolean mIsPositionDispatchPosted;
+    private boolean mAreLayersReleased;
+    private int mDispatchedPosition = -1;
+
+    private CardState mTopCard;
     private SwipeHelper mSwipeHelper;
+    private ViewRecycler mRecycler;
+    private ViewRecycler mOwnRecycler;
+    private int mRecycleHitCount;
+    private int mRecycleMissCount;
+    private StackAnimator mStackAnimator;
+    private SnapshotRenderer mSnapshotRenderer;
+    private OcclusionCuller mOcclusionCuller;
+    private StackShadowRenderer mShadowRenderer;
+    private RectF mShadowBounds;
+    private RectF mChildBounds;
+    private ArrayDeque<View> mPrefetchedViews;
+    private ArrayDeque<CardState> mDismissingCards;
+    private StackCards mCards;
+    private ViewCards mViewCards;
+    private ModelCards mModelCards;
+    private IntQueue mPendingSwipes;
+    private DismissHistory mDismissHistory;
+    private ComponentCallbacks2 mMemoryCallbacks;
+    private MessageQueue.IdleHandler mIdlePrefetchHandler;
+    private Runnable mPositionDispatcher;
+    private Runnable mStagedFillRunnable;
     private DataSetObserver mDataObserver;
+    private SwipeStackAdapter.RangeObserver mRangeObserver;
     private SwipeStackListener mListener;
     private SwipeProgressListener mProgressListener;
+    private SwipeStackMetrics mMetrics;
+    private float mRefreshRate;
+    private MediaPrefetcher mMediaPrefetcher;
+    private SwipeEventChannel mEventChannel;
+    private SwipeStackScope mScope;
+    private BitmapCache mScopeBitmapCache;
 
     public SwipeStack(Context context) {
         this(context, null);
@@ -95,6 +186,8 @@ public class SwipeStack extends ViewGroup {
                             DEFAULT_ANIMATION_DURATION);
             mNumberOfStackedViews =
                     attrs.getInt(R.styleable.SwipeStack_stack_size, DEFAULT_STACK_SIZE);
+            mIdlePrefetchSize =
+                    attrs.getInt(R.styleable.SwipeStack_idle_prefetch_size, DEFAULT_IDLE_PREFETCH_SIZE);
             mViewSpacing =
                     attrs.getDimensionPixelSize(R.styleable.SwipeStack_stack_spacing,
                             getResources().getDimensionPixelSize(R.dimen.default_stack_spacing));
@@ -106,9 +199,40 @@ public class SwipeStack extends ViewGroup {
                     attrs.getFloat(R.styleable.SwipeStack_swipe_opacity, DEFAULT_SWIPE_OPACITY);
             mScaleFactor =
                     attrs.getFloat(R.styleable.SwipeStack_scale_factor, DEFAULT_SCALE_FACTOR);
+            mMinFlingVelocity =
+                    attrs.getDimension(R.styleable.SwipeStack_min_fling_velocity,
+                            getResources().getDimension(R.dimen.default_min_fling_velocity));
             mDisableHwAcceleration =
                     attrs.getBoolean(R.styleable.SwipeStack_disable_hw_acceleration,
                             DEFAULT_DISABLE_HW_ACCELERATION);
+            mAdaptiveHwLayers =
+                    attrs.getBoolean(R.styleable.SwipeStack_adaptive_hw_layers,
+                            DEFAULT_ADAPTIVE_HW_LAYERS);
+            mSnapshotCards =
+                    attrs.getBoolean(R.styleable.SwipeStack_snapshot_cards,
+                            DEFAULT_SNAPSHOT_CARDS);
+            mOcclusionCulling =
+                    attrs.getBoolean(R.styleable.SwipeStack_occlusion_culling,
+                            DEFAULT_OCCLUSION_CULLING);
+            mShadowMode =
+                    attrs.getInt(R.styleable.SwipeStack_shadow_mode,
+                            DEFAULT_SHADOW_MODE);
+            mRenderMode =
+                    attrs.getInt(R.styleable.SwipeStack_render_mode,
+                            DEFAULT_RENDER_MODE);
+            mStagedFirstRender =
+                    attrs.getBoolean(R.styleable.SwipeStack_staged_first_render,
+                            DEFAULT_STAGED_FIRST_RENDER);
+            mTouchPrediction =
+                    attrs.getBoolean(R.styleable.SwipeStack_touch_prediction,
+                            DEFAULT_TOUCH_PREDICTION);
+            mOwnRecycler = new ViewRecycler(
+                    attrs.getInt(R.styleable.SwipeStack_recycle_pool_size,
+                            DEFAULT_RECYCLE_POOL_SIZE));
+            mRecycler = mOwnRecycler;
+            mDismissHistory = new DismissHistory(
+                    attrs.getInt(R.styleable.SwipeStack_undo_history_size,
+                            DEFAULT_UNDO_HISTORY_SIZE));
         } finally {
             attrs.recycle();
         }
@@ -116,6 +240,7 @@ public class SwipeStack extends ViewGroup {
 
     private void initialize() {
         mRandom = new Random();
+        mScaleTable = createScaleTable(mScaleFactor, mNumberOfStackedViews);
 
         setClipToPadding(false);
         setClipChildren(false);
@@ -124,13 +249,87 @@ public class SwipeStack extends ViewGroup {
         mSwipeHelper.setAnimationDuration(mAnimationDuration);
         mSwipeHelper.setRotation(mSwipeRotation);
         mSwipeHelper.setOpacityEnd(mSwipeOpacity);
+        mSwipeHelper.setMinFlingVelocity(mMinFlingVelocity);
+        mSwipeHelper.setAdaptiveHwLayers(mAdaptiveHwLayers);
+        mSwipeHelper.setTouchPrediction(mTouchPrediction);
+
+        mStackAnimator = new StackAnimator(this);
+        mStackAnimator.setDuration(mAnimationDuration);
+        mStackAnimator.setAdaptiveHwLayers(mAdaptiveHwLayers);
+
+        mSnapshotRenderer = new SnapshotRenderer();
+        mOcclusionCuller = new OcclusionCuller();
+        mShadowRenderer = new StackShadowRenderer();
+        mShadowBounds = new RectF();
+        mChildBounds = new RectF();
+
+        mPrefetchedViews = new ArrayDeque<>();
+        mDismissingCards = new ArrayDeque<>();
+        mViewCards = new ViewCards();
+        mCards = mViewCards;
+        mPendingSwipes = new IntQueue(DEFAULT_STACK_SIZE);
+        mIdlePrefetchHandler = new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                mIsIdlePrefetchScheduled = prefetchNextViewWhileIdle();
+                return mIsIdlePrefetchScheduled;
+            }
+        };
+
+        mStagedFillRunnable = new Runnable() {
+            @Override
+            public void run() {
+                updateStackInPlace();
+            }
+        };
+
+        mPositionDispatcher = new Runnable() {
+            @Override
+            public void run() {
+                mIsPositionDispatchPosted = false;
+                dispatchStackPosition();
+            }
+        };
+
+        mMemoryCallbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                // Do nothing
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        };
 
         mDataObserver = new DataSetObserver() {
             @Override
             public void onChanged() {
                 super.onChanged();
-                invalidate();
-                requestLayout();
+                onDataSetChanged();
+            }
+        };
+
+        mRangeObserver = new SwipeStackAdapter.RangeObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                onItemsChanged(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                onItemsInserted(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                onItemsRemoved(positionStart, itemCount);
             }
         };
     }
@@ -139,15 +338,76 @@ public class SwipeStack extends ViewGroup {
     public Parcelable onSaveInstanceState() {
         Bundle bundle = new Bundle();
         bundle.putParcelable(KEY_SUPER_STATE, super.onSaveInstanceState());
-        bundle.putInt(KEY_CURRENT_INDEX, mCurrentViewIndex - getChildCount());
+        bundle.putInt(KEY_CURRENT_INDEX, getCurrentPosition());
+
+        // Rotations of the stacked views, starting with the top view, followed by
+        // the restored ones of the views which have not been staged yet
+        int stackedViewCount = getStackedViewCount();
+        int restoredIndex = mCurrentViewIndex - mRestoredPosition;
+        int pendingCount = mRestoredRotations != null && restoredIndex >= 0
+                ? Math.max(mRestoredRotations.length - restoredIndex, 0) : 0;
+        float[] rotations = new float[stackedViewCount + pendingCount];
+        for (int x = 0; x < stackedViewCount; x++) {
+            rotations[x] = getCardAt(stackedViewCount - 1 - x).rotation;
+        }
+        if (pendingCount > 0) {
+            System.arraycopy(mRestoredRotations, restoredIndex, rotations,
+                    stackedViewCount, pendingCount);
+        }
+        bundle.putFloatArray(KEY_ROTATIONS, rotations);
+
+        // The undo history, oldest entry first. Views which are still being
+        // dismissed count as dismissed already.
+        int undoCount = Math.min(getUndoCount() + mDismissingCards.size(),
+                mDismissHistory.getCapacity());
+        int[] undoPositions = new int[undoCount];
+        int[] undoDirections = new int[undoCount];
+        float[] undoRotations = new float[undoCount];
+        int index = undoCount - 1;
+        Iterator<CardState> dismissing = mDismissingCards.descendingIterator();
+        while (dismissing.hasNext() && index >= 0) {
+            putUndoEntry(dismissing.next(), index--,
+                    undoPositions, undoDirections, undoRotations);
+        }
+        for (int x = mDismissHistory.size() - 1; x >= 0 && index >= 0; x--) {
+            putUndoEntry(CardState.get(mDismissHistory.get(x)), index--,
+                    undoPositions, undoDirections, undoRotations);
+        }
+        for (int x = mRestoredUndoCount - 1; x >= 0 && index >= 0; x--) {
+            undoPositions[index] = mRestoredUndoPositions[x];
+            undoDirections[index] = mRestoredUndoDirections[x];
+            undoRotations[index] = mRestoredUndoRotations[x];
+            index--;
+        }
+        bundle.putIntArray(KEY_UNDO_POSITIONS, undoPositions);
+        bundle.putIntArray(KEY_UNDO_DIRECTIONS, undoDirections);
+        bundle.putFloatArray(KEY_UNDO_ROTATIONS, undoRotations);
+
         return bundle;
     }
 
+    private static void putUndoEntry(CardState state, int index, int[] positions,
+                                     int[] directions, float[] rotations) {
+        positions[index] = state.position;
+        directions[index] = state.dismissDirection;
+        rotations[index] = state.rotation;
+    }
+
     @Override
     public void onRestoreInstanceState(Parcelable state) {
         if (state instanceof Bundle) {
             Bundle bundle = (Bundle) state;
             mCurrentViewIndex = bundle.getInt(KEY_CURRENT_INDEX);
+            mRestoredPosition = mCurrentViewIndex;
+            mRestoredRotations = bundle.getFloatArray(KEY_ROTATIONS);
+
+            mRestoredUndoPositions = bundle.getIntArray(KEY_UNDO_POSITIONS);
+            mRestoredUndoDirections = bundle.getIntArray(KEY_UNDO_DIRECTIONS);
+            mRestoredUndoRotations = bundle.getFloatArray(KEY_UNDO_ROTATIONS);
+            mRestoredUndoCount = mRestoredUndoPositions != null
+                    ? mRestoredUndoPositions.length : 0;
+            trimDismissHistory(mDismissHistory.getCapacity());
+
             state = bundle.getParcelable(KEY_SUPER_STATE);
         }
 
@@ -156,269 +416,1929 @@ public class SwipeStack extends ViewGroup {
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        long startNanos = mMetrics != null ? System.nanoTime() : 0;
 
         if (mAdapter == null || mAdapter.isEmpty()) {
             mCurrentViewIndex = 0;
-            removeAllViewsInLayout();
+            clearPrefetchedViews();
+            recycleAllCards();
             return;
         }
 
-        for (int x = getChildCount();
-             x < mNumberOfStackedViews && mCurrentViewIndex < mAdapter.getCount();
-             x++) {
+        updateStack();
+
+        if (mMetrics != null) mMetrics.recordLayout(startNanos);
+    }
+
+    /**
+     * Tops up the stack and moves the cards to their positions.
+     */
+    private void updateStack() {
+        if (mIsFirstLayout && mStagedFirstRender) mIsStagingStack = true;
+
+        // While staging, each frame only pays for a single new card
+        int maxNewViews = mIsStagingStack ? 1 : mNumberOfStackedViews;
+        for (int x = getStackedViewCount();
+             x < mNumberOfStackedViews && mCurrentViewIndex < mAdapter.getCount()
+                     && maxNewViews > 0;
+             x++, maxNewViews--) {
             addNextView();
         }
 
+        if (mIsStagingStack) {
+            if (getStackedViewCount() < mNumberOfStackedViews
+                    && mCurrentViewIndex < mAdapter.getCount()) {
+                removeCallbacks(mStagedFillRunnable);
+                postOnAnimation(mStagedFillRunnable);
+            } else {
+                mIsStagingStack = false;
+            }
+        }
+
+        long reorderStartNanos = mMetrics != null ? System.nanoTime() : 0;
         reorderItems();
+        if (mMetrics != null) mMetrics.recordReorder(reorderStartNanos);
 
         mIsFirstLayout = false;
+        // Staging adds the restored views over several frames
+        if (!mIsStagingStack) mRestoredRotations = null;
+        scheduleIdlePrefetch();
+        drainPendingSwipes();
+        postStackPosition();
+    }
+
+    /**
+     * Updates the stack without a layout pass. Only new or resized cards are laid
+     * out, the others just get new animation targets. Falls back to a layout pass
+     * until the stack has been laid out once or if one is pending anyway.
+     */
+    private void updateStackInPlace() {
+        if (mIsFirstLayout || isLayoutRequested() || mAdapter == null || mAdapter.isEmpty()) {
+            requestLayout();
+            return;
+        }
+
+        if (mMetrics != null) mMetrics.recordInPlaceUpdate();
+        updateStack();
+        invalidate();
     }
 
     private void addNextView() {
         if (mCurrentViewIndex < mAdapter.getCount()) {
-            View bottomView = mAdapter.getView(mCurrentViewIndex, null, this);
-            bottomView.setTag(R.id.new_view, true);
-
-            if (!mDisableHwAcceleration) {
-                bottomView.setLayerType(LAYER_TYPE_HARDWARE, null);
-            }
+            long startNanos = mMetrics != null ? System.nanoTime() : 0;
 
-            if (mViewRotation > 0) {
-                bottomView.setRotation(mRandom.nextInt(mViewRotation) - (mViewRotation / 2));
-            }
+            CardState card = mCards.addCard(mCurrentViewIndex);
+            card.isNew = true;
+            card.rotation = getRestingRotation();
+            card.setRotation(card.rotation);
 
-            int width = getWidth() - (getPaddingLeft() + getPaddingRight());
-            int height = getHeight() - (getPaddingTop() + getPaddingBottom());
+            mCurrentViewIndex++;
 
-            LayoutParams params = bottomView.getLayoutParams();
-            if (params == null) {
-                params = new LayoutParams(
-                        FrameLayout.LayoutParams.WRAP_CONTENT,
-                        FrameLayout.LayoutParams.WRAP_CONTENT);
-            }
+            if (mMetrics != null) mMetrics.recordAddView(startNanos);
+        }
+    }
 
-            int measureSpecWidth = MeasureSpec.AT_MOST;
-            int measureSpecHeight = MeasureSpec.AT_MOST;
+    /**
+     * Returns the rotation of the card added next, either the one it had before
+     * the state was saved or a random one.
+     */
+    private float getRestingRotation() {
+        int restoredIndex = mCurrentViewIndex - mRestoredPosition;
+        if (mRestoredRotations != null
+                && restoredIndex >= 0 && restoredIndex < mRestoredRotations.length) {
+            return mRestoredRotations[restoredIndex];
+        } else if (mViewRotation > 0) {
+            return mRandom.nextInt(mViewRotation) - (mViewRotation / 2);
+        }
+        return 0;
+    }
 
-            if (params.width == LayoutParams.MATCH_PARENT) {
-                measureSpecWidth = MeasureSpec.EXACTLY;
-            }
+    private View obtainView(int position) {
+        int viewType = mAdapter.getItemViewType(position);
+        View convertView = getScrapView(viewType);
+        long startNanos = mMetrics != null ? System.nanoTime() : 0;
+        View view = mAdapter.getView(position, convertView, this);
+        if (mMetrics != null) mMetrics.recordGetView(startNanos);
+        view.setTag(R.id.view_type, viewType);
+        if (mAdapter.hasStableIds()) {
+            view.setTag(R.id.item_id, mAdapter.getItemId(position));
+        }
+        return view;
+    }
 
-            if (params.height == LayoutParams.MATCH_PARENT) {
-                measureSpecHeight = MeasureSpec.EXACTLY;
-            }
+    /**
+     * Takes a view of the given type from the recycle pool, counting the hits and
+     * misses of this stack even if the pool is shared through a scope.
+     */
+    private View getScrapView(int viewType) {
+        View view = mRecycler.getScrapView(viewType);
+        if (view != null) {
+            mRecycleHitCount++;
+        } else {
+            mRecycleMissCount++;
+        }
+        return view;
+    }
 
-            bottomView.measure(measureSpecWidth | width, measureSpecHeight | height);
-            addViewInLayout(bottomView, 0, params, true);
+    /**
+     * Returns true if every card keeps a hardware layer for its whole lifetime.
+     * In adaptive mode cards only get a layer while they are being animated.
+     */
+    private boolean hasPermanentLayers() {
+        return !mDisableHwAcceleration && !mAdaptiveHwLayers && !mAreLayersReleased;
+    }
 
-            mCurrentViewIndex++;
+    private LayoutParams getLayoutParams(View view) {
+        LayoutParams params = view.getLayoutParams();
+        if (params == null) {
+            params = new LayoutParams(
+                    FrameLayout.LayoutParams.WRAP_CONTENT,
+                    FrameLayout.LayoutParams.WRAP_CONTENT);
         }
+        return params;
     }
 
-    private void reorderItems() {
-        for (int x = 0; x < getChildCount(); x++) {
-            View childView = getChildAt(x);
-            int topViewIndex = getChildCount() - 1;
+    private void measureView(View view) {
+        int width = getMeasuredWidth() - (getPaddingLeft() + getPaddingRight());
+        int height = getMeasuredHeight() - (getPaddingTop() + getPaddingBottom());
 
-            int distanceToViewAbove = (topViewIndex * mViewSpacing) - (x * mViewSpacing);
-            int newPositionX = (getWidth() - childView.getMeasuredWidth()) / 2;
-            int newPositionY = distanceToViewAbove + getPaddingTop();
+        LayoutParams params = getLayoutParams(view);
 
-            childView.layout(
-                    newPositionX,
-                    getPaddingTop(),
-                    newPositionX + childView.getMeasuredWidth(),
-                    getPaddingTop() + childView.getMeasuredHeight());
+        int measureSpecWidth = MeasureSpec.AT_MOST;
+        int measureSpecHeight = MeasureSpec.AT_MOST;
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                childView.setTranslationZ(x);
-            }
+        if (params.width == LayoutParams.MATCH_PARENT) {
+            measureSpecWidth = MeasureSpec.EXACTLY;
+        }
 
-            boolean isNewView = (boolean) childView.getTag(R.id.new_view);
-            float scaleFactor = (float) Math.pow(mScaleFactor, getChildCount() - x);
+        if (params.height == LayoutParams.MATCH_PARENT) {
+            measureSpecHeight = MeasureSpec.EXACTLY;
+        }
 
-            if (x == topViewIndex) {
-                mSwipeHelper.unregisterObservedView();
-                mTopView = childView;
-                mSwipeHelper.registerObservedView(mTopView, newPositionX, newPositionY);
-            }
+        view.measure(measureSpecWidth | width, measureSpecHeight | height);
+    }
 
-            if (!mIsFirstLayout) {
+    private void scheduleIdlePrefetch() {
+        if (mIsIdlePrefetchScheduled || mIdlePrefetchSize <= 0 || mAdapter == null) return;
+        if (!mCards.hasViews()) return;
+        if (mPrefetchedViews.size() >= mIdlePrefetchSize) return;
 
-                if (isNewView) {
-                    childView.setTag(R.id.new_view, false);
-                    childView.setAlpha(0);
-                    childView.setY(newPositionY);
-                    childView.setScaleY(scaleFactor);
-                    childView.setScaleX(scaleFactor);
-                }
+        mIsIdlePrefetchScheduled = true;
+        Looper.myQueue().addIdleHandler(mIdlePrefetchHandler);
+    }
 
-                childView.animate()
-                        .y(newPositionY)
-                        .scaleX(scaleFactor)
-                        .scaleY(scaleFactor)
-                        .alpha(1)
-                        .setDuration(mAnimationDuration);
+    /**
+     * Binds and measures the view for the next position behind the prefetched ones.
+     * Views can only be bound on the main thread, so this runs there while it is
+     * idle, one view per idle pass, so fast swipes find their next card ready.
+     * A slow getView() still runs on the main thread, just at a better time.
+     *
+     * @return True if there are more views left to prefetch.
+     */
+    private boolean prefetchNextViewWhileIdle() {
+        if (mAdapter == null || getWidth() == 0) return false;
 
-            } else {
-                childView.setTag(R.id.new_view, false);
-                childView.setY(newPositionY);
-                childView.setScaleY(scaleFactor);
-                childView.setScaleX(scaleFactor);
-            }
+        int position = mCurrentViewIndex + mPrefetchedViews.size();
+        if (mPrefetchedViews.size() >= mIdlePrefetchSize || position >= mAdapter.getCount()) {
+            return false;
         }
+
+        View view = obtainView(position);
+        measureView(view);
+        mPrefetchedViews.offer(view);
+
+        return mPrefetchedViews.size() < mIdlePrefetchSize && position + 1 < mAdapter.getCount();
     }
 
-    private void removeTopView() {
-        if (mTopView != null) {
-            removeView(mTopView);
-            mTopView = null;
-        }
+    private void clearPrefetchedViews() {
+        trimPrefetchedViews(0);
+    }
 
-        if (getChildCount() == 0) {
-            if (mListener != null) mListener.onStackEmpty();
+    private void trimPrefetchedViews(int size) {
+        while (mPrefetchedViews.size() > Math.max(size, 0)) {
+            recycleView(mPrefetchedViews.pollLast());
         }
     }
 
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        int width = MeasureSpec.getSize(widthMeasureSpec);
-        int height = MeasureSpec.getSize(heightMeasureSpec);
-        setMeasuredDimension(width, height);
+    /**
+     * Returns the adapter position of the card at the given index.
+     */
+    int getPositionOfCard(int index) {
+        return mCurrentViewIndex - 1 - index;
     }
 
-    public void onSwipeStart() {
-        if (mProgressListener != null) mProgressListener.onSwipeStart(getCurrentPosition());
+    private void onDataSetChanged() {
+        invalidateMediaPrefetch(0);
+
+        if (mCurrentViewIndex > mAdapter.getCount()) {
+            refreshViews();
+            return;
+        }
+
+        mCards.onDataSetChanged();
+        if (!mAdapter.hasStableIds() || !hasSameItemIds()) {
+            trimDismissHistory(0);
+            clearPrefetchedViews();
+            for (int x = 0; x < getStackedViewCount(); x++) {
+                mCards.rebindCard(x, getPositionOfCard(x));
+            }
+        }
+
+        fillStack();
     }
 
-    public void onSwipeProgress(float progress) {
-        if (mProgressListener != null)
-            mProgressListener.onSwipeProgress(getCurrentPosition(), progress);
+    private void onItemsChanged(int positionStart, int itemCount) {
+        invalidateMediaPrefetch(positionStart);
+
+        if (positionStart < getCurrentPosition()) {
+            trimDismissHistory(0);
+        }
+
+        rebindRange(positionStart, positionStart + itemCount);
+        fillStack();
     }
 
-    public void onSwipeEnd() {
-        if (mProgressListener != null) mProgressListener.onSwipeEnd(getCurrentPosition());
+    /**
+     * Rebinds the stacked cards and drops the prefetched views between the given
+     * positions, as they show different items now.
+     */
+    private void rebindRange(int positionStart, int positionEnd) {
+        for (int x = 0; x < getStackedViewCount(); x++) {
+            int position = getPositionOfCard(x);
+            if (position >= positionStart && position < positionEnd) {
+                mCards.rebindCard(x, position);
+            }
+        }
+
+        if (positionEnd > mCurrentViewIndex) {
+            trimPrefetchedViews(positionStart - mCurrentViewIndex);
+        }
     }
 
-    public void onViewSwipedToLeft() {
-        if (mListener != null) mListener.onViewSwipedToLeft(getCurrentPosition());
-        removeTopView();
+    private void onItemsInserted(int positionStart, int itemCount) {
+        invalidateMediaPrefetch(positionStart);
+        shiftDismissingPositions(positionStart, itemCount);
+
+        if (positionStart < getCurrentPosition()) {
+            // Items behind the stack only shift the positions
+            trimDismissHistory(0);
+            mCurrentViewIndex += itemCount;
+        } else if (positionStart >= mCurrentViewIndex) {
+            trimPrefetchedViews(positionStart - mCurrentViewIndex);
+            fillStack();
+        } else {
+            // The cards and prefetched views from the start on show the inserted
+            // and shifted items now
+            rebindRange(positionStart, Integer.MAX_VALUE);
+            fillStack();
+        }
     }
 
-    public void onViewSwipedToRight() {
-        if (mListener != null) mListener.onViewSwipedToRight(getCurrentPosition());
-        removeTopView();
+    private void onItemsRemoved(int positionStart, int itemCount) {
+        int positionEnd = positionStart + itemCount;
+        invalidateMediaPrefetch(positionStart);
+        shiftDismissingPositions(positionEnd, -itemCount);
+
+        if (positionEnd <= getCurrentPosition()) {
+            // Items behind the stack only shift the positions
+            trimDismissHistory(0);
+            mCurrentViewIndex -= itemCount;
+        } else if (positionStart >= mCurrentViewIndex) {
+            trimPrefetchedViews(positionStart - mCurrentViewIndex);
+            fillStack();
+        } else {
+            int currentPosition = getCurrentPosition();
+            if (positionStart < currentPosition) {
+                // A removal reaching behind the top view moves back to its start
+                trimDismissHistory(0);
+                mCurrentViewIndex -= currentPosition - positionStart;
+            }
+
+            // The cards and prefetched views from the start on show the items behind
+            // the removed ones now, the ones past the end of the adapter leave
+            while (getStackedViewCount() > 0 && mCurrentViewIndex > mAdapter.getCount()) {
+                removeBottomCard();
+            }
+            rebindRange(positionStart, Integer.MAX_VALUE);
+            updateStackInPlace();
+        }
     }
 
     /**
-     * Returns the current adapter position.
-     *
-     * @return The current position.
+     * Shifts the positions the cards being dismissed will be reported with,
+     * if they are at or after the given position.
      */
-    public int getCurrentPosition() {
-        return mCurrentViewIndex - getChildCount();
+    private void shiftDismissingPositions(int positionStart, int offset) {
+        for (CardState state : mDismissingCards) {
+            if (state.position >= positionStart) {
+                state.position += offset;
+            }
+        }
     }
 
     /**
-     * Returns the adapter currently in use in this SwipeStack.
-     *
-     * @return The adapter currently used to display data in this SwipeStack.
+     * Removes the bottom card of the stack, which shows the last position.
      */
-    public Adapter getAdapter() {
-        return mAdapter;
+    private void removeBottomCard() {
+        CardState card = getCardAt(0);
+        if (card == mTopCard) {
+            mSwipeHelper.unregisterObservedView();
+            mTopCard = null;
+        }
+
+        invalidate();
+        mCards.removeCard(card);
+        mCurrentViewIndex--;
     }
 
     /**
-     * Sets the data behind this SwipeView.
-     *
-     * @param adapter The Adapter which is responsible for maintaining the
-     *                data backing this list and for producing a view to represent an
-     *                item in that data set.
-     * @see #getAdapter()
+     * Adds views only if the stack has room for more of them,
+     * otherwise just tops up the prefetch window.
      */
-    public void setAdapter(Adapter adapter) {
-        if (mAdapter != null) mAdapter.unregisterDataSetObserver(mDataObserver);
-        mAdapter = adapter;
-        mAdapter.registerDataSetObserver(mDataObserver);
+    private void fillStack() {
+        if (getStackedViewCount() < mNumberOfStackedViews
+                && mCurrentViewIndex < mAdapter.getCount()) {
+            updateStackInPlace();
+        } else {
+            scheduleIdlePrefetch();
+        }
     }
 
     /**
-     * Returns the allowed swipe directions.
-     *
-     * @return The currently allowed swipe directions.
+     * Drops all views and rebuilds the stack starting at the current position.
      */
-    public int getAllowedSwipeDirections() {
-        return mAllowedSwipeDirections;
+    private void refreshViews() {
+        refreshViews(getCurrentPosition());
     }
 
     /**
-     * Sets the allowed swipe directions.
-     *
-     * @param directions One of {@link #SWIPE_DIRECTION_BOTH},
-     *                   {@link #SWIPE_DIRECTION_ONLY_LEFT}, or {@link #SWIPE_DIRECTION_ONLY_RIGHT}.
+     * Drops all views and rebuilds the stack starting at the given position.
      */
-    public void setAllowedSwipeDirections(int directions) {
-        mAllowedSwipeDirections = directions;
+    private void refreshViews(int position) {
+        mCurrentViewIndex = Math.min(position, mAdapter.getCount());
+        trimDismissHistory(0);
+        clearPrefetchedViews();
+        recycleAllCards();
+        requestLayout();
     }
 
-    /**
-     * Register a callback to be invoked when the user has swiped the top view
-     * left / right or when the stack gets empty.
-     *
-     * @param listener The callback that will run
-     */
-    public void setListener(@Nullable SwipeStackListener listener) {
-        mListener = listener;
+    private boolean hasSameItemIds() {
+        for (int x = 0; x < getStackedViewCount(); x++) {
+            if (!hasItemId(getCardAt(x).view, getPositionOfCard(x))) {
+                return false;
+            }
+        }
+
+        int position = mCurrentViewIndex;
+        Iterator<View> iterator = mPrefetchedViews.iterator();
+        while (iterator.hasNext()) {
+            if (!hasItemId(iterator.next(), position++)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean hasItemId(View view, int position) {
+        // Cards drawn by the stack have no item to compare
+        if (view == null) return false;
+        Object itemId = view.getTag(R.id.item_id);
+        return itemId != null && position < mAdapter.getCount()
+                && (long) itemId == mAdapter.getItemId(position);
+    }
+
+    private void reorderItems() {
+        int topViewIndex = getStackedViewCount() - 1;
+
+        // Cards which are being dismissed sit above the top card and are left alone
+        for (int x = 0; x <= topViewIndex; x++) {
+            CardState card = getCardAt(x);
+
+            int distanceToViewAbove = (topViewIndex * mViewSpacing) - (x * mViewSpacing);
+            int newPositionX = (getWidth() - getCardWidth(card)) / 2;
+            int newPositionY = distanceToViewAbove + getPaddingTop();
+
+            mCards.layoutCard(x, topViewIndex, newPositionX);
+
+            float scaleFactor = getScaleForDepth(topViewIndex + 1 - x);
+            float rotation = card.rotation;
+
+            if (x == topViewIndex) {
+                if (card == mTopCard && mSwipeHelper.isDragging()) {
+                    // The user owns the position of the dragged card
+                    continue;
+                }
+
+                if (!mSwipeHelper.isObservedCard(card, newPositionX, newPositionY, rotation)) {
+                    mSwipeHelper.unregisterObservedView();
+                    registerTopCard(card, newPositionX, newPositionY);
+                }
+            }
+
+            if (!mIsFirstLayout) {
+
+                if (card.isNew) {
+                    card.isNew = false;
+                    mStackAnimator.jumpTo(card,
+                            newPositionX, newPositionY, scaleFactor, 0, rotation);
+                }
+
+                mStackAnimator.animateTo(card,
+                        newPositionX, newPositionY, scaleFactor, 1, rotation);
+
+            } else {
+                card.isNew = false;
+                mStackAnimator.jumpTo(card,
+                        newPositionX, newPositionY, scaleFactor, 1, rotation);
+            }
+        }
     }
 
     /**
-     * Register a callback to be invoked when the user starts / stops interacting
-     * with the top view of the stack.
-     *
-     * @param listener The callback that will run
+     * Lays out the card view at the given index and places it in the shadow
+     * order of the stack.
      */
-    public void setSwipeProgressListener(@Nullable SwipeProgressListener listener) {
-        mProgressListener = listener;
+    private void layoutChild(View childView, int index, int topViewIndex, int newPositionX) {
+        // Cards only differ in their transforms, so only new or
+        // resized ones need to be laid out
+        if (childView.getLeft() != newPositionX
+                || childView.getTop() != getPaddingTop()
+                || childView.getWidth() != childView.getMeasuredWidth()
+                || childView.getHeight() != childView.getMeasuredHeight()
+                || childView.isLayoutRequested()) {
+            childView.layout(
+                    newPositionX,
+                    getPaddingTop(),
+                    newPositionX + childView.getMeasuredWidth(),
+                    getPaddingTop() + childView.getMeasuredHeight());
+            if (mMetrics != null) mMetrics.recordChildLayout();
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            if (mShadowMode == SHADOW_MODE_STACK && index != topViewIndex) {
+                // Rests at Z 0 without a shadow of its own, see drawStackShadow()
+                childView.setTranslationZ(-childView.getElevation());
+            } else {
+                childView.setTranslationZ(index);
+            }
+        }
     }
 
     /**
-     * Get the view from the top of the stack.
-     *
-     * @return The view if the stack is not empty or null otherwise.
+     * Precomputes the scale of a view for every depth of the stack
+     * so layout passes don't have to call {@link Math#pow(double, double)}.
      */
-    public View getTopView() {
-        return mTopView;
+    private static float[] createScaleTable(float scaleFactor, int stackSize) {
+        float[] table = new float[stackSize + 2];
+        table[0] = 1f;
+        for (int depth = 1; depth < table.length; depth++) {
+            table[depth] = table[depth - 1] * scaleFactor;
+        }
+        return table;
+    }
+
+    private float getScaleForDepth(int depth) {
+        if (depth < mScaleTable.length) {
+            return mScaleTable[depth];
+        }
+        return (float) Math.pow(mScaleFactor, depth);
     }
 
     /**
-     * Programmatically dismiss the top view to the right.
+     * Returns the number of views on the stack, not counting the ones
+     * which are currently animated out of it.
      */
-    public void swipeTopViewToRight() {
-        if (getChildCount() == 0) return;
-        mSwipeHelper.swipeViewToRight();
+    private int getStackedViewCount() {
+        return getCardCount() - mDismissingCards.size();
     }
 
     /**
-     * Programmatically dismiss the top view to the left.
+     * Returns the number of cards, i.e. the card views or the cards drawn by
+     * the stack itself, including the ones being dismissed.
      */
-    public void swipeTopViewToLeft() {
-        if (getChildCount() == 0) return;
-        mSwipeHelper.swipeViewToLeft();
+    int getCardCount() {
+        return mCards.getCount();
     }
 
     /**
-     * Resets the current adapter position and repopulates the stack.
+     * Returns the card at the given index, counting from the bottom of the stack.
      */
-    public void resetStack() {
-        mCurrentViewIndex = 0;
-        removeAllViewsInLayout();
-        requestLayout();
+    CardState getCardAt(int index) {
+        return mCards.getCardAt(index);
+    }
+
+    private int getCardWidth(CardState card) {
+        return mCards.getMeasuredWidth(card);
+    }
+
+    /**
+     * Called by the swipe helper once the dismiss animation of the top card has
+     * started. The card below becomes the new top card right away, so further
+     * swipes don't have to wait for the animation to finish.
+     */
+    void onCardDismissStarted(CardState state, int direction) {
+        state.position = getCurrentPosition();
+        state.dismissDirection = direction;
+        state.isDismissing = true;
+        if (mMetrics != null) state.dismissStartNanos = System.nanoTime();
+        if (mEventChannel != null) recordSwipeEvent(state.position, direction);
+
+        mDismissingCards.offer(state);
+        if (state == mTopCard) {
+            mSwipeHelper.unregisterObservedView();
+            mTopCard = null;
+        }
+
+        registerTopView();
+        updateStackInPlace();
+        postStackPosition();
+    }
+
+    private void recordSwipeEvent(int position, int direction) {
+        long itemId = mAdapter != null && position < mAdapter.getCount()
+                ? mAdapter.getItemId(position) : -1;
+        long gestureDuration = mSwipeHelper.isReleasing()
+                ? SystemClock.uptimeMillis() - mGestureStartMillis : 0;
+        mEventChannel.record(position, itemId, direction,
+                System.currentTimeMillis(), gestureDuration);
+    }
+
+    /**
+     * Tells a {@link SwipeStackAdapter} about the current position after the
+     * current frame, so it never gets to change its data during a layout pass.
+     */
+    private void postStackPosition() {
+        if (mIsPositionDispatchPosted) return;
+        if (!(mAdapter instanceof SwipeStackAdapter) && mMediaPrefetcher == null) return;
+
+        mIsPositionDispatchPosted = true;
+        post(mPositionDispatcher);
+    }
+
+    private void dispatchStackPosition() {
+        if (mAdapter == null) return;
+
+        int position = getCurrentPosition();
+        if (position != mDispatchedPosition && mAdapter instanceof SwipeStackAdapter) {
+            mDispatchedPosition = position;
+            ((SwipeStackAdapter) mAdapter).onStackPositionChanged(position);
+        }
+
+        updateMediaPrefetch(position);
+    }
+
+    /**
+     * Moves the media prefetch window to the given position, cancelling the
+     * positions which dropped out of it and prefetching the new ones.
+     */
+    private void updateMediaPrefetch(int position) {
+        if (mMediaPrefetcher == null) return;
+
+        // Upcoming cards are not measured yet, the top card is the best estimate
+        int topViewIndex = getStackedViewCount() - 1;
+        if (topViewIndex < 0) return;
+        CardState topCard = getCardAt(topViewIndex);
+        int width = getCardWidth(topCard);
+        int height = mCards.getMeasuredHeight(topCard);
+        if (width <= 0 || height <= 0) return;
+
+        int start = position;
+        int end = Math.max(start, Math.min(position + mMediaPrefetchLookahead,
+                mAdapter.getCount()));
+
+        for (int x = mMediaPrefetchStart; x < mMediaPrefetchEnd; x++) {
+            if (x < start || x >= end) {
+                mMediaPrefetcher.onCancelPrefetch(x);
+            }
+        }
+
+        for (int x = start; x < end; x++) {
+            if (x < mMediaPrefetchStart || x >= mMediaPrefetchEnd) {
+                mMediaPrefetcher.onPrefetch(x, width, height);
+            }
+        }
+
+        mMediaPrefetchStart = start;
+        mMediaPrefetchEnd = end;
+    }
+
+    /**
+     * Cancels the prefetched positions starting at the given position, as they
+     * no longer refer to the same items. They get prefetched again after the
+     * next position update.
+     */
+    private void invalidateMediaPrefetch(int fromPosition) {
+        if (mMediaPrefetcher == null) return;
+
+        int start = Math.max(fromPosition, mMediaPrefetchStart);
+        for (int x = start; x < mMediaPrefetchEnd; x++) {
+            mMediaPrefetcher.onCancelPrefetch(x);
+        }
+        mMediaPrefetchEnd = Math.max(mMediaPrefetchStart, Math.min(mMediaPrefetchEnd, start));
+        postStackPosition();
+    }
+
+    private void cancelMediaPrefetch() {
+        if (mMediaPrefetcher != null) {
+            for (int x = mMediaPrefetchStart; x < mMediaPrefetchEnd; x++) {
+                mMediaPrefetcher.onCancelPrefetch(x);
+            }
+        }
+        mMediaPrefetchStart = 0;
+        mMediaPrefetchEnd = 0;
+    }
+
+    /**
+     * Registers the card below the dismissed ones with the swipe helper
+     * at the position it is heading to.
+     */
+    private void registerTopView() {
+        int topViewIndex = getStackedViewCount() - 1;
+        if (topViewIndex < 0) return;
+
+        CardState topCard = getCardAt(topViewIndex);
+        registerTopCard(topCard, (getWidth() - getCardWidth(topCard)) / 2, getPaddingTop());
+    }
+
+    private void registerTopCard(CardState card, float positionX, float positionY) {
+        mTopCard = card;
+        if (card.view != null) mSnapshotRenderer.release(card.view);
+        mSwipeHelper.registerObservedCard(card, positionX, positionY, card.rotation);
+    }
+
+    /**
+     * Called by the stack animator once cards have finished animating. Reports
+     * finished dismissals to the listener in the order they were started and
+     * removes the cards from the stack.
+     */
+    void onCardAnimationsEnded() {
+        if (mDismissingCards.isEmpty()) return;
+
+        while (!mDismissingCards.isEmpty() && !mDismissingCards.peek().isAnimating) {
+            CardState state = mDismissingCards.poll();
+            state.isDismissing = false;
+
+            if (mMetrics != null) {
+                mMetrics.endFrameTracking(mAnimationDuration);
+                if (state.dismissStartNanos > 0) mMetrics.recordDismiss(state.dismissStartNanos);
+            }
+            state.dismissStartNanos = 0;
+
+            if (mListener != null) {
+                if (state.dismissDirection == SWIPE_DIRECTION_ONLY_LEFT) {
+                    mListener.onViewSwipedToLeft(state.position);
+                } else {
+                    mListener.onViewSwipedToRight(state.position);
+                }
+            }
+
+            // The card sits above the stack, so removing it changes no geometry
+            invalidate();
+            mCards.removeDismissedCard(state);
+        }
+
+        if (getCardCount() == 0) {
+            if (mListener != null) mListener.onStackEmpty();
+        }
+    }
+
+    private void addToDismissHistory(View view) {
+        if (view.getLayerType() != LAYER_TYPE_NONE) {
+            view.setLayerType(LAYER_TYPE_NONE, null);
+        }
+        if (mRestoredUndoCount > 0) {
+            trimDismissHistory(mDismissHistory.getCapacity() - 1);
+        }
+
+        mSnapshotRenderer.release(view);
+        View evicted = mDismissHistory.push(view);
+        if (evicted != null) {
+            recycleView(evicted);
+        }
+    }
+
+    /**
+     * Drops the oldest dismissed views until at most the given number is left.
+     */
+    private void trimDismissHistory(int size) {
+        // Restored entries are older than the views in the history
+        int restoredSize = Math.max(size - mDismissHistory.size(), 0);
+        if (mRestoredUndoCount > restoredSize) {
+            int dropped = mRestoredUndoCount - restoredSize;
+            System.arraycopy(mRestoredUndoPositions, dropped, mRestoredUndoPositions, 0, restoredSize);
+            System.arraycopy(mRestoredUndoDirections, dropped, mRestoredUndoDirections, 0, restoredSize);
+            System.arraycopy(mRestoredUndoRotations, dropped, mRestoredUndoRotations, 0, restoredSize);
+            mRestoredUndoCount = restoredSize;
+        }
+
+        while (mDismissHistory.size() > size) {
+            recycleView(mDismissHistory.removeOldest());
+        }
+    }
+
+    /**
+     * Creates the view of the newest undo entry which was restored from a saved
+     * state, placed where its dismiss animation ended.
+     */
+    private View obtainRestoredUndoView() {
+        int index = mRestoredUndoCount - 1;
+        int position = mRestoredUndoPositions[index];
+        if (position >= mAdapter.getCount()) return null;
+
+        View view = obtainView(position);
+        CardState state = CardState.get(view);
+        state.position = position;
+        state.rotation = mRestoredUndoRotations[index];
+        state.dismissDirection = mRestoredUndoDirections[index];
+
+        boolean isLeft = state.dismissDirection == SWIPE_DIRECTION_ONLY_LEFT;
+        view.setTranslationX(isLeft ? -getWidth() : getWidth());
+        view.setRotation(isLeft ? -mSwipeRotation : mSwipeRotation);
+        view.setAlpha(0f);
+        return view;
+    }
+
+    private void swipeTopView(int direction) {
+        if (mAdapter == null) return;
+
+        int remaining = mAdapter.getCount() - getCurrentPosition() - mPendingSwipes.size();
+        if (remaining <= 0) return;
+
+        mPendingSwipes.offer(direction);
+        drainPendingSwipes();
+    }
+
+    /**
+     * Dismisses the top view for every queued swipe as long as there is a top view
+     * which is not animated out already.
+     */
+    private void drainPendingSwipes() {
+        if (mIsDrainingSwipes) return;
+        mIsDrainingSwipes = true;
+
+        while (!mPendingSwipes.isEmpty() && mTopCard != null && !mSwipeHelper.isDismissing()) {
+            int direction = mPendingSwipes.poll();
+            if (mMetrics != null) mMetrics.beginFrameTracking();
+            mStackAnimator.settle(mTopCard);
+
+            if (direction == SWIPE_DIRECTION_ONLY_LEFT) {
+                mSwipeHelper.swipeViewToLeft();
+            } else {
+                mSwipeHelper.swipeViewToRight();
+            }
+        }
+
+        mIsDrainingSwipes = false;
+    }
+
+    private void recycleView(View view) {
+        mStackAnimator.reset(CardState.get(view));
+        mSnapshotRenderer.release(view);
+        Object viewType = view.getTag(R.id.view_type);
+        if (viewType != null) {
+            mRecycler.addScrapView(view, (int) viewType);
+        }
+    }
+
+    /**
+     * Drops all cards, the card views as well as the cards drawn by the stack.
+     */
+    private void recycleAllCards() {
+        mCards.removeAllCards();
+        while (!mDismissingCards.isEmpty()) {
+            mDismissingCards.poll().isDismissing = false;
+        }
+        mSwipeHelper.unregisterObservedView();
+        mTopCard = null;
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        mCards.draw(canvas);
+    }
+
+    private void drawChildren(Canvas canvas) {
+        if (mOcclusionCulling) {
+            int occludedCount = mOcclusionCuller.update(this);
+            if (mMetrics != null && occludedCount > 0) mMetrics.recordOccludedDraws(occludedCount);
+        }
+        if (mShadowMode == SHADOW_MODE_STACK
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            drawStackShadow(canvas);
+        }
+        super.dispatchDraw(canvas);
+    }
+
+    /**
+     * Draws a single shadow around the cards below the top view, which have
+     * their own shadows cancelled in {@link #reorderItems()}.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void drawStackShadow(Canvas canvas) {
+        mShadowBounds.setEmpty();
+        float elevation = 0;
+
+        for (int x = 0; x < getStackedViewCount() - 1; x++) {
+            View child = getChildAt(x);
+            if (child.getVisibility() != VISIBLE || child.getAlpha() == 0) continue;
+
+            mChildBounds.set(0, 0, child.getWidth(), child.getHeight());
+            child.getMatrix().mapRect(mChildBounds);
+            mChildBounds.offset(child.getLeft(), child.getTop());
+            mShadowBounds.union(mChildBounds);
+            elevation = Math.max(elevation, child.getElevation());
+        }
+
+        mShadowRenderer.draw(canvas, mShadowBounds, elevation);
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (mOcclusionCulling && CardState.get(child).isOccluded) {
+            // Skipping the child also skips its elevation shadow
+            return false;
+        }
+        if (mSnapshotCards && child != getTopView()
+                && !CardState.get(child).isDismissing
+                && mSnapshotRenderer.draw(canvas, child)) {
+            return false;
+        }
+        return super.drawChild(canvas, child, drawingTime);
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility == VISIBLE) restoreTrimmedResources();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        updateRefreshRate();
+        getContext().registerComponentCallbacks(mMemoryCallbacks);
+        mStackAnimator.resume();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mIsIdlePrefetchScheduled) {
+            Looper.myQueue().removeIdleHandler(mIdlePrefetchHandler);
+            mIsIdlePrefetchScheduled = false;
+        }
+        if (mMetrics != null) mMetrics.stopFrameTracking();
+        // Dismissals are reported once the stack is attached again
+        mStackAnimator.pause();
+        mSwipeHelper.release();
+        removeCallbacks(mPositionDispatcher);
+        removeCallbacks(mStagedFillRunnable);
+        mIsPositionDispatchPosted = false;
+        cancelMediaPrefetch();
+        mShadowRenderer.release();
+        getContext().unregisterComponentCallbacks(mMemoryCallbacks);
+        releaseSnapshots();
+    }
+
+    /**
+     * Releases resources step by step as the trim level rises, the ones which are
+     * cheapest to rebuild first: spare views, then pooled bitmaps, then the
+     * snapshots and layers of the cards. The undo history can't be rebuilt at all,
+     * so it is only trimmed once the process is in danger of being killed.
+     */
+    private void trimMemory(int level) {
+        if (mScope != null) mScope.trimMemory(level);
+
+        // Trimmed before the recycle pool is cleared, which would take the dropped views
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            trimDismissHistory(0);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            trimDismissHistory(mDismissHistory.size() / 2);
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            clearPrefetchedViews();
+            mRecycler.clear();
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mSnapshotRenderer.clearPool();
+            mShadowRenderer.release();
+        }
+
+        // Includes TRIM_MEMORY_UI_HIDDEN, the cards are redrawn once visible again
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            releaseSnapshots();
+            releaseLayers();
+        }
+    }
+
+    private void releaseLayers() {
+        if (!hasPermanentLayers() || !mCards.hasViews()) return;
+
+        mAreLayersReleased = true;
+        for (int x = 0; x < getStackedViewCount(); x++) {
+            View child = getChildAt(x);
+            if (child != getTopView() || !mSwipeHelper.isDragging()) {
+                child.setLayerType(LAYER_TYPE_NONE, null);
+            }
+        }
+    }
+
+    /**
+     * Brings back what {@link #trimMemory(int)} released and which is not
+     * rebuilt on demand anyway.
+     */
+    private void restoreTrimmedResources() {
+        if (mAreLayersReleased) {
+            mAreLayersReleased = false;
+            if (hasPermanentLayers() && mCards.hasViews()) {
+                for (int x = 0; x < getStackedViewCount(); x++) {
+                    getChildAt(x).setLayerType(LAYER_TYPE_HARDWARE, null);
+                }
+            }
+        }
+        scheduleIdlePrefetch();
+    }
+
+    private void releaseSnapshots() {
+        for (int x = 0; x < getChildCount(); x++) {
+            mSnapshotRenderer.release(getChildAt(x));
+        }
+        mSnapshotRenderer.clearPool();
+    }
+
+    /**
+     * Reads the refresh rate of the display, which the touch prediction and the
+     * frame metrics are based on.
+     */
+    private void updateRefreshRate() {
+        WindowManager windowManager =
+                (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        mRefreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        mSwipeHelper.setRefreshRate(mRefreshRate);
+        if (mMetrics != null) mMetrics.setRefreshRate(mRefreshRate);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = MeasureSpec.getSize(heightMeasureSpec);
+        setMeasuredDimension(width, height);
+
+        if (width != mLastMeasuredWidth || height != mLastMeasuredHeight) {
+            // E.g. after a rotation, cards which are already there need the new size
+            mLastMeasuredWidth = width;
+            mLastMeasuredHeight = height;
+            for (int x = 0; x < getChildCount(); x++) {
+                measureView(getChildAt(x));
+            }
+            for (View view : mPrefetchedViews) {
+                measureView(view);
+            }
+        }
+    }
+
+    StackAnimator getStackAnimator() {
+        return mStackAnimator;
+    }
+
+    CardState getTopCard() {
+        return mTopCard;
+    }
+
+    SwipeHelper getSwipeHelper() {
+        return mSwipeHelper;
+    }
+
+    /**
+     * Lets the cards handle the gestures the stack gets itself, which only happens
+     * while it draws the cards itself. Card views get them from their own listener.
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return mCards.onTouchEvent(event) || super.onTouchEvent(event);
+    }
+
+    public void onSwipeStart() {
+        mGestureStartMillis = SystemClock.uptimeMillis();
+        mStackAnimator.settle(mTopCard);
+        if (mMetrics != null) mMetrics.beginFrameTracking();
+        if (mProgressListener != null) mProgressListener.onSwipeStart(getCurrentPosition());
+    }
+
+    public void onSwipeProgress(float progress) {
+        if (mProgressListener != null)
+            mProgressListener.onSwipeProgress(getCurrentPosition(), progress);
+    }
+
+    public void onSwipeEnd() {
+        if (mMetrics != null) mMetrics.endFrameTracking(mAnimationDuration);
+        if (mProgressListener != null) mProgressListener.onSwipeEnd(getCurrentPosition());
+    }
+
+    /**
+     * Removes the top view to the left without animating it. The listener is
+     * notified and the next view moves up before this returns.
+     *
+     * @deprecated Dismissals are reported by the stack itself once their animation
+     * has ended. Use {@link #swipeTopViewToLeft()} to dismiss the top view.
+     */
+    @Deprecated
+    public void onViewSwipedToLeft() {
+        removeTopCard(SWIPE_DIRECTION_ONLY_LEFT);
+    }
+
+    /**
+     * Removes the top view to the right without animating it. The listener is
+     * notified and the next view moves up before this returns.
+     *
+     * @deprecated Dismissals are reported by the stack itself once their animation
+     * has ended. Use {@link #swipeTopViewToRight()} to dismiss the top view.
+     */
+    @Deprecated
+    public void onViewSwipedToRight() {
+        removeTopCard(SWIPE_DIRECTION_ONLY_RIGHT);
+    }
+
+    /**
+     * Removes the top card right away, like the stack did before dismissals were
+     * animated. Dismissals which are still animating end first, so the listener
+     * is notified in order.
+     */
+    private void removeTopCard(int direction) {
+        CardState card = mTopCard;
+        if (card == null) return;
+
+        boolean isLeft = direction == SWIPE_DIRECTION_ONLY_LEFT;
+        mStackAnimator.jumpTo(card, card.getX() + (isLeft ? -getWidth() : getWidth()),
+                card.getY(), card.getScale(), 0f, isLeft ? -mSwipeRotation : mSwipeRotation);
+        onCardDismissStarted(card, direction);
+        mStackAnimator.end();
+        onCardAnimationsEnded();
+    }
+
+    /**
+     * Returns the current adapter position.
+     *
+     * @return The current position.
+     */
+    public int getCurrentPosition() {
+        return mCurrentViewIndex - getStackedViewCount();
+    }
+
+    /**
+     * Returns the adapter currently in use in this SwipeStack.
+     *
+     * @return The adapter currently used to display data in this SwipeStack.
+     */
+    public Adapter getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Sets the data behind this SwipeView. Adapters extending {@link SwipeStackAdapter}
+     * can report fine grained changes so only the affected cards are rebound.
+     *
+     * Replacing an adapter keeps the current position, so switching e.g. to a
+     * {@link CardModelAdapter} over the same data swaps the kind of cards in place.
+     * See {@link #setRenderMode(int)} to have the stack draw such cards itself.
+     *
+     * @param adapter The Adapter which is responsible for maintaining the
+     *                data backing this list and for producing a view to represent an
+     *                item in that data set.
+     * @see #getAdapter()
+     */
+    public void setAdapter(Adapter adapter) {
+        boolean isReplacing = mAdapter != null;
+        if (mAdapter != null) mAdapter.unregisterDataSetObserver(mDataObserver);
+        if (mAdapter instanceof SwipeStackAdapter) {
+            ((SwipeStackAdapter) mAdapter).unregisterRangeObserver(mRangeObserver);
+        }
+        trimDismissHistory(0);
+        clearPrefetchedViews();
+        if (isReplacing) {
+            // The cards on the stack have not been swiped yet and are shown again
+            mCurrentViewIndex = getCurrentPosition();
+            recycleAllCards();
+        }
+        if (mRecycler == mOwnRecycler) mRecycler.clear();
+        mDispatchedPosition = -1;
+        cancelMediaPrefetch();
+        mAdapter = adapter;
+        updateRecycler();
+        updateDrawingModels();
+        mAdapter.registerDataSetObserver(mDataObserver);
+        if (mAdapter instanceof SwipeStackAdapter) {
+            ((SwipeStackAdapter) mAdapter).registerRangeObserver(mRangeObserver);
+        }
+        if (isReplacing) requestLayout();
+    }
+
+    /**
+     * Returns the allowed swipe directions.
+     *
+     * @return The currently allowed swipe directions.
+     */
+    public int getAllowedSwipeDirections() {
+        return mAllowedSwipeDirections;
+    }
+
+    /**
+     * Sets the allowed swipe directions.
+     *
+     * @param directions One of {@link #SWIPE_DIRECTION_BOTH},
+     *                   {@link #SWIPE_DIRECTION_ONLY_LEFT}, or {@link #SWIPE_DIRECTION_ONLY_RIGHT}.
+     */
+    public void setAllowedSwipeDirections(int directions) {
+        mAllowedSwipeDirections = directions;
+    }
+
+    /**
+     * Returns whether cards only get a hardware layer while they are animated.
+     *
+     * @return True if adaptive hardware layers are enabled.
+     */
+    public boolean isAdaptiveHwLayersEnabled() {
+        return mAdaptiveHwLayers;
+    }
+
+    /**
+     * Promote only the cards which are currently dragged or animated to a hardware
+     * layer instead of giving every card a layer for its whole lifetime. This saves
+     * GPU memory while keeping drags and animations cheap to draw.
+     *
+     * @param enabled True to enable adaptive hardware layers.
+     */
+    public void setAdaptiveHwLayersEnabled(boolean enabled) {
+        mAdaptiveHwLayers = enabled;
+        mSwipeHelper.setAdaptiveHwLayers(enabled);
+        mStackAnimator.setAdaptiveHwLayers(enabled);
+
+        int layerType = hasPermanentLayers() ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE;
+        for (int x = 0; x < getChildCount(); x++) {
+            getChildAt(x).setLayerType(layerType, null);
+        }
+    }
+
+    /**
+     * Returns whether the views below the top view are drawn from snapshots.
+     *
+     * @return True if snapshot rendering is enabled.
+     */
+    public boolean isSnapshotCardsEnabled() {
+        return mSnapshotCards;
+    }
+
+    /**
+     * Draw the views below the top view from bitmap snapshots instead of their
+     * live view hierarchy. A snapshot is captured once and only updated when the
+     * view is rebound or marked with {@link #invalidateCardSnapshots()}. Views
+     * drawn from a snapshot don't cast an elevation shadow.
+     *
+     * @param enabled True to enable snapshot rendering.
+     */
+    public void setSnapshotCardsEnabled(boolean enabled) {
+        mSnapshotCards = enabled;
+        if (!enabled) releaseSnapshots();
+        invalidate();
+    }
+
+    /**
+     * Returns whether views which are completely covered by a view above them are skipped
+     * when drawing the stack.
+     *
+     * @return True if occlusion culling is enabled.
+     */
+    public boolean isOcclusionCullingEnabled() {
+        return mOcclusionCulling;
+    }
+
+    /**
+     * Skip drawing views which are completely covered by a single view above them,
+     * given their current position, scale and rotation. Only enable this if the
+     * views are opaque and fill their bounds, e.g. have no rounded corners.
+     *
+     * @param enabled True to enable occlusion culling.
+     */
+    public void setOcclusionCullingEnabled(boolean enabled) {
+        mOcclusionCulling = enabled;
+        invalidate();
+    }
+
+    /**
+     * Returns whether the dragged view is placed where the finger is predicted
+     * to be when the frame is displayed.
+     *
+     * @return True if touch prediction is enabled.
+     */
+    public boolean isTouchPredictionEnabled() {
+        return mTouchPrediction;
+    }
+
+    /**
+     * Place the dragged view where the finger is predicted to be when the frame
+     * is displayed instead of where it was last reported, to make up for the
+     * touch latency. The prediction is bounded and turned off for the frame
+     * whenever the finger changes direction. See
+     * {@link SwipeStackMetrics#getPredictionError()} for its accuracy.
+     *
+     * @param enabled True to enable touch prediction.
+     */
+    public void setTouchPredictionEnabled(boolean enabled) {
+        mTouchPrediction = enabled;
+        mSwipeHelper.setTouchPrediction(enabled);
+    }
+
+    /**
+     * Returns whether the first layout only adds the top view and the views
+     * below it are added one per frame.
+     *
+     * @return True if the first render is staged.
+     */
+    public boolean isStagedFirstRenderEnabled() {
+        return mStagedFirstRender;
+    }
+
+    /**
+     * Only add the top view in the first layout pass and add the views below it
+     * one per frame afterwards, fading them in. This cuts the cost of the first
+     * frame to a single view. Has no effect once the stack has been laid out.
+     *
+     * @param enabled True to stage the first render.
+     */
+    public void setStagedFirstRenderEnabled(boolean enabled) {
+        mStagedFirstRender = enabled;
+    }
+
+    /**
+     * Returns how the views of the stack cast their shadows.
+     *
+     * @return {@link #SHADOW_MODE_PER_CARD} or {@link #SHADOW_MODE_STACK}.
+     */
+    public int getShadowMode() {
+        return mShadowMode;
+    }
+
+    /**
+     * Sets how the views of the stack cast their shadows. With {@link #SHADOW_MODE_STACK}
+     * only the top view keeps its elevation shadow, the views below it share one
+     * pre-rendered shadow. Requires Android 5.0, has no effect on older versions.
+     *
+     * @param mode {@link #SHADOW_MODE_PER_CARD} or {@link #SHADOW_MODE_STACK}.
+     */
+    public void setShadowMode(int mode) {
+        mShadowMode = mode;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Returns how the cards are rendered.
+     *
+     * @return {@link #RENDER_MODE_VIEWS} or {@link #RENDER_MODE_CANVAS}.
+     */
+    public int getRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * Sets how the cards are rendered. With {@link #RENDER_MODE_CANVAS} and a
+     * {@link CardModelAdapter}, the stack draws the models itself instead of adding
+     * a view per card, which leaves nothing to bind, measure or lay out per card.
+     * Swipes, animations and listeners work the same, but such cards cast no
+     * elevation shadow and can't be snapshotted, culled, prefetched or undone.
+     * Other adapters always get views. Switching keeps the current position.
+     *
+     * @param mode {@link #RENDER_MODE_VIEWS} or {@link #RENDER_MODE_CANVAS}.
+     */
+    public void setRenderMode(int mode) {
+        mRenderMode = mode;
+        updateDrawingModels();
+    }
+
+    /**
+     * Switches between card views and cards drawn by the stack as the render mode
+     * and the adapter require, rebuilding the stack at the current position.
+     */
+    private void updateDrawingModels() {
+        StackCards cards = mViewCards;
+        if (mRenderMode == RENDER_MODE_CANVAS && mAdapter instanceof CardModelAdapter) {
+            if (mModelCards == null) mModelCards = new ModelCards(this);
+            cards = mModelCards;
+        }
+        cards.onDataSetChanged();
+        if (cards == mCards) return;
+
+        // The cards of the other kind are dropped while they can still be counted
+        if (getCardCount() > 0) refreshViews();
+        clearPrefetchedViews();
+        mCards = cards;
+        invalidate();
+    }
+
+    /**
+     * Marks the snapshots of all views as outdated, e.g. because their content
+     * changed without the adapter being notified.
+     */
+    public void invalidateCardSnapshots() {
+        for (int x = 0; x < getChildCount(); x++) {
+            mSnapshotRenderer.markDirty(getChildAt(x));
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns the horizontal release velocity above which a swipe dismisses
+     * the top view even if it has not been dragged past the threshold.
+     *
+     * @return The minimum fling velocity in pixels per second.
+     */
+    public float getMinFlingVelocity() {
+        return mMinFlingVelocity;
+    }
+
+    /**
+     * Sets the horizontal release velocity above which a swipe dismisses
+     * the top view even if it has not been dragged past the threshold.
+     *
+     * @param velocity The minimum fling velocity in pixels per second.
+     */
+    public void setMinFlingVelocity(float velocity) {
+        mMinFlingVelocity = velocity;
+        mSwipeHelper.setMinFlingVelocity(velocity);
+    }
+
+    /**
+     * Register a callback to be invoked when the user has swiped the top view
+     * left / right or when the stack gets empty.
+     *
+     * @param listener The callback that will run
+     */
+    public void setListener(@Nullable SwipeStackListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Register a callback to be invoked when the user starts / stops interacting
+     * with the top view of the stack.
+     *
+     * @param listener The callback that will run
+     */
+    public void setSwipeProgressListener(@Nullable SwipeProgressListener listener) {
+        mProgressListener = listener;
+    }
+
+    /**
+     * Records every swipe decision into the given channel, which delivers them
+     * in order on a background thread. Use it instead of the {@link SwipeStackListener}
+     * for slow work like database writes. The channel is not closed by the stack.
+     *
+     * @param channel The channel or null to stop recording.
+     */
+    public void setSwipeEventChannel(@Nullable SwipeEventChannel channel) {
+        mEventChannel = channel;
+    }
+
+    /**
+     * Returns the scope this stack shares its resources with.
+     *
+     * @return The scope or null if the stack uses its own resources.
+     */
+    @Nullable
+    public SwipeStackScope getScope() {
+        return mScope;
+    }
+
+    /**
+     * Shares the recycled views, snapshot bitmaps, bitmap cache and background
+     * threads of this stack with the other stacks of the given scope. The scope
+     * doesn't hold on to the stack, so it may be dropped while attached.
+     *
+     * @param scope The scope or null to use resources of this stack only.
+     */
+    public void setScope(@Nullable SwipeStackScope scope) {
+        if (scope == mScope) return;
+
+        releaseSnapshots();
+        if (mScopeBitmapCache != null) {
+            mScopeBitmapCache.shutdown();
+            mScopeBitmapCache = null;
+        }
+
+        mScope = scope;
+        if (scope != null) {
+            mOwnRecycler.clear();
+            mSnapshotRenderer = scope.getSnapshotRenderer();
+            mRandom = scope.getRandom();
+            mScopeBitmapCache = new BitmapCache(scope.getBitmapCache(), scope.newExecutor());
+        } else {
+            mSnapshotRenderer = new SnapshotRenderer();
+            mRandom = new Random();
+        }
+        updateRecycler();
+    }
+
+    /**
+     * Returns a bitmap cache within the budget of the {@link SwipeStackScope}, e.g.
+     * for a {@link MediaPrefetcher}. It shares its bitmaps with the other stacks of
+     * the scope and decodes on the threads of the scope, taking turns with them.
+     *
+     * @return The bitmap cache or null if the stack is not attached to a scope.
+     */
+    @Nullable
+    public BitmapCache getBitmapCache() {
+        return mScopeBitmapCache;
+    }
+
+    private void updateRecycler() {
+        mRecycler = mScope != null && mAdapter != null
+                ? mScope.getRecycler(mAdapter) : mOwnRecycler;
+    }
+
+    /**
+     * Sets a prefetcher which gets told about the positions coming up next,
+     * so it can load their media before the cards are bound.
+     *
+     * @param prefetcher The prefetcher or null to stop prefetching.
+     */
+    public void setMediaPrefetcher(@Nullable MediaPrefetcher prefetcher) {
+        cancelMediaPrefetch();
+        mMediaPrefetcher = prefetcher;
+        postStackPosition();
+    }
+
+    /**
+     * Returns the number of positions, starting at the top view, which are
+     * handed to the {@link MediaPrefetcher}.
+     */
+    public int getMediaPrefetchLookahead() {
+        return mMediaPrefetchLookahead;
+    }
+
+    /**
+     * Sets the number of positions, starting at the top view, which are
+     * handed to the {@link MediaPrefetcher}.
+     */
+    public void setMediaPrefetchLookahead(int lookahead) {
+        mMediaPrefetchLookahead = Math.max(lookahead, 0);
+        postStackPosition();
+    }
+
+    /**
+     * Returns the metrics currently collected by this SwipeStack.
+     *
+     * @return The metrics or null if no metrics are collected.
+     */
+    @Nullable
+    public SwipeStackMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Start collecting frame times, touch latency and layout durations into the
+     * given metrics. Collecting is disabled by default and costs nothing then.
+     *
+     * @param metrics The metrics to record into or null to stop collecting.
+     */
+    public void setMetrics(@Nullable SwipeStackMetrics metrics) {
+        if (mMetrics != null) mMetrics.stopFrameTracking();
+        mMetrics = metrics;
+        if (mMetrics != null) mMetrics.setRefreshRate(mRefreshRate);
+    }
+
+    /**
+     * Get the view from the top of the stack.
+     *
+     * @return The view if the stack is not empty or null otherwise. Cards drawn by
+     * the stack itself have no view, see {@link #RENDER_MODE_CANVAS}.
+     */
+    public View getTopView() {
+        return mTopCard != null ? mTopCard.view : null;
+    }
+
+    /**
+     * Programmatically dismiss the top view to the right. If the top view
+     * is being dismissed already, the swipe is queued and applies to the next view.
+     */
+    public void swipeTopViewToRight() {
+        swipeTopView(SWIPE_DIRECTION_ONLY_RIGHT);
+    }
+
+    /**
+     * Programmatically dismiss the top view to the left. If the top view
+     * is being dismissed already, the swipe is queued and applies to the next view.
+     */
+    public void swipeTopViewToLeft() {
+        swipeTopView(SWIPE_DIRECTION_ONLY_LEFT);
+    }
+
+    /**
+     * Programmatically dismiss the given number of views to the right. The dismiss
+     * animations overlap and the listener is notified in order.
+     *
+     * @param count The number of views to dismiss.
+     */
+    public void swipeTopViewsToRight(int count) {
+        for (int x = 0; x < count; x++) {
+            swipeTopView(SWIPE_DIRECTION_ONLY_RIGHT);
+        }
+    }
+
+    /**
+     * Programmatically dismiss the given number of views to the left. The dismiss
+     * animations overlap and the listener is notified in order.
+     *
+     * @param count The number of views to dismiss.
+     */
+    public void swipeTopViewsToLeft(int count) {
+        for (int x = 0; x < count; x++) {
+            swipeTopView(SWIPE_DIRECTION_ONLY_LEFT);
+        }
+    }
+
+    /**
+     * Returns the number of programmatic swipes which are waiting for a view.
+     *
+     * @return The number of queued swipes.
+     */
+    public int getPendingSwipeCount() {
+        return mPendingSwipes.size();
+    }
+
+    /**
+     * Drops all programmatic swipes which are waiting for a view.
+     */
+    public void cancelPendingSwipes() {
+        mPendingSwipes.clear();
+    }
+
+    /**
+     * Resets the current adapter position and repopulates the stack.
+     */
+    public void resetStack() {
+        mCurrentViewIndex = 0;
+        mPendingSwipes.clear();
+        trimDismissHistory(0);
+        clearPrefetchedViews();
+        recycleAllCards();
+        requestLayout();
+    }
+
+    /**
+     * Brings back the most recently dismissed view and animates it onto the top
+     * of the stack. The view is reused as it was, the adapter is not asked for it again.
+     * Not supported while the stack draws the cards itself, see {@link #RENDER_MODE_CANVAS}.
+     *
+     * @return True if a view was brought back, false if there is nothing to undo.
+     */
+    public boolean undoLastSwipe() {
+        if (!mCards.hasViews() || getUndoCount() == 0 || !mDismissingCards.isEmpty()
+                || mSwipeHelper.isDragging()) {
+            return false;
+        }
+
+        View view = mDismissHistory.peekNewest();
+        int position = view != null
+                ? CardState.get(view).position
+                : mRestoredUndoPositions[mRestoredUndoCount - 1];
+        if (position != getCurrentPosition() - 1 || mAdapter == null) {
+            // The data changed in a way the history could not follow
+            trimDismissHistory(0);
+            return false;
+        }
+
+        if (view != null) {
+            mDismissHistory.popNewest();
+        } else {
+            view = obtainRestoredUndoView();
+            mRestoredUndoCount--;
+            if (view == null) return false;
+        }
+
+        if (getStackedViewCount() >= mNumberOfStackedViews && getChildCount() > 0) {
+            // Hand the bottom view back to the prefetch queue to make room
+            View bottomView = getChildAt(0);
+            mStackAnimator.reset(CardState.get(bottomView));
+            removeViewInLayout(bottomView);
+            mPrefetchedViews.offerFirst(bottomView);
+            mCurrentViewIndex--;
+        }
+
+        mSwipeHelper.unregisterObservedView();
+        mTopCard = null;
+
+        CardState.get(view).isNew = false;
+        if (hasPermanentLayers()) {
+            view.setLayerType(LAYER_TYPE_HARDWARE, null);
+        }
+
+        measureView(view);
+        addViewInLayout(view, getStackedViewCount(), getLayoutParams(view), true);
+        updateStackInPlace();
+
+        return true;
+    }
+
+    /**
+     * Returns the number of dismissed views which can be brought back
+     * with {@link #undoLastSwipe()}.
+     *
+     * @return The number of views in the undo history.
+     */
+    public int getUndoCount() {
+        return mDismissHistory.size() + mRestoredUndoCount;
+    }
+
+    /**
+     * Returns the maximum number of dismissed views kept for {@link #undoLastSwipe()}.
+     *
+     * @return The size of the undo history.
+     */
+    public int getUndoHistorySize() {
+        return mDismissHistory.getCapacity();
+    }
+
+    /**
+     * Sets the maximum number of dismissed views kept for {@link #undoLastSwipe()}.
+     * The oldest views are dropped first, also when the system runs low on memory.
+     * A size of 0 disables undo.
+     *
+     * @param size The size of the undo history.
+     */
+    public void setUndoHistorySize(int size) {
+        for (View view : mDismissHistory.setCapacity(size)) {
+            recycleView(view);
+        }
+        trimDismissHistory(mDismissHistory.getCapacity());
+    }
+
+    /**
+     * Returns the number of views which are prepared ahead of the stack while the
+     * main thread is idle.
+     *
+     * @return The prefetch depth.
+     */
+    public int getIdlePrefetchSize() {
+        return mIdlePrefetchSize;
+    }
+
+    /**
+     * Sets the number of views which are bound and measured ahead of the stack
+     * while the main thread is idle. This is independent of the stack size.
+     * A size of 0 disables prefetching.
+     * <p>
+     * The views are still bound, inflated and measured on the main thread, one per
+     * idle pass, so a slow {@link Adapter#getView(int, View, ViewGroup)} is moved
+     * out of the swipe but not off the main thread. Load the data the views show in
+     * the background, e.g. with a {@link MediaPrefetcher}.
+     * </p>
+     *
+     * @param size The prefetch depth.
+     */
+    public void setIdlePrefetchSize(int size) {
+        mIdlePrefetchSize = size;
+        trimPrefetchedViews(size);
+        scheduleIdlePrefetch();
+    }
+
+    /**
+     * Returns the maximum number of dismissed views kept per view type
+     * for reuse as convertView.
+     *
+     * @return The size of the recycle pool.
+     */
+    public int getRecyclePoolSize() {
+        return mRecycler.getMaxScrapViews();
+    }
+
+    /**
+     * Sets the maximum number of dismissed views kept per view type
+     * for reuse as convertView. A size of 0 disables recycling. While the stack
+     * is attached to a {@link SwipeStackScope}, this sizes the shared pool.
+     *
+     * @param size The size of the recycle pool.
+     */
+    public void setRecyclePoolSize(int size) {
+        if (mScope != null) {
+            mScope.setRecyclePoolSize(size);
+        } else {
+            mRecycler.setMaxScrapViews(size);
+        }
+    }
+
+    /**
+     * Returns how often a recycled view could be passed to the adapter of this
+     * stack, also if the recycle pool is shared through a {@link SwipeStackScope}.
+     *
+     * @return The number of recycle pool hits.
+     */
+    public int getRecycleHitCount() {
+        return mRecycleHitCount;
+    }
+
+    /**
+     * Returns the number of views held by this SwipeStack: the views on the stack
+     * and the prefetched, dismissed and recycled ones.
+     *
+     * @return The number of retained views.
+     */
+    public int getRetainedViewCount() {
+        return getChildCount() + mPrefetchedViews.size() + mDismissHistory.size()
+                + mRecycler.getScrapViewCount();
+    }
+
+    /**
+     * Returns an estimate of the graphics memory held by this SwipeStack, i.e. the
+     * hardware layers of its views, their snapshots and the stack shadow. Software
+     * layers are drawing caches on the heap and are not counted. The estimate
+     * shrinks when the system asks apps to trim their memory.
+     *
+     * @return The estimated footprint in bytes.
+     */
+    public long getMemoryFootprint() {
+        long bytes = mSnapshotRenderer.getPoolByteCount() + mShadowRenderer.getByteCount();
+        for (int x = 0; x < getChildCount(); x++) {
+            bytes += getMemoryFootprint(getChildAt(x));
+        }
+        for (View view : mPrefetchedViews) {
+            bytes += getMemoryFootprint(view);
+        }
+        for (int x = 0; x < mDismissHistory.size(); x++) {
+            bytes += getMemoryFootprint(mDismissHistory.get(x));
+        }
+        return bytes;
+    }
+
+    private static long getMemoryFootprint(View view) {
+        long bytes = 0;
+        if (view.getLayerType() == LAYER_TYPE_HARDWARE) {
+            bytes += 4L * view.getWidth() * view.getHeight();
+        }
+        CardState state = (CardState) view.getTag(R.id.card_state);
+        if (state != null && state.snapshot != null) {
+            bytes += state.snapshot.getByteCount();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns how often the adapter of this stack had to create a new view because
+     * the recycle pool was empty, also if the pool is shared through a
+     * {@link SwipeStackScope}.
+     *
+     * @return The number of recycle pool misses.
+     */
+    public int getRecycleMissCount() {
+        return mRecycleMissCount;
     }
 
     /**
      * Interface definition for a callback to be invoked when the top view was
      * swiped to the left / right or when the stack gets empty.
      */
+    /**
+     * The cards of a stack which adds a view for each of them.
+     */
+    private class ViewCards implements StackCards {
+
+        @Override
+        public boolean hasViews() {
+            return true;
+        }
+
+        @Override
+        public int getCount() {
+            return getChildCount();
+        }
+
+        @Override
+        public CardState getCardAt(int index) {
+            return CardState.get(getChildAt(index));
+        }
+
+        @Override
+        public CardState addCard(int position) {
+            View view = mPrefetchedViews.poll();
+            if (view == null) {
+                view = obtainView(position);
+            }
+
+            if (hasPermanentLayers()) {
+                view.setLayerType(LAYER_TYPE_HARDWARE, null);
+            }
+
+            measureView(view);
+            addViewInLayout(view, 0, getLayoutParams(view), true);
+            return CardState.get(view);
+        }
+
+        @Override
+        public void removeCard(CardState card) {
+            removeViewInLayout(card.view);
+            recycleView(card.view);
+        }
+
+        @Override
+        public void removeDismissedCard(CardState card) {
+            removeViewInLayout(card.view);
+            addToDismissHistory(card.view);
+        }
+
+        @Override
+        public void removeAllCards() {
+            for (int x = 0; x < getChildCount(); x++) {
+                recycleView(getChildAt(x));
+            }
+            removeAllViewsInLayout();
+        }
+
+        /**
+         * Binds the current data to the child at the given index, reusing the
+         * child as convertView if the view type did not change.
+         */
+        @Override
+        public void rebindCard(int index, int position) {
+            View child = getChildAt(index);
+            int viewType = mAdapter.getItemViewType(position);
+            Object oldViewType = child.getTag(R.id.view_type);
+
+            View convertView = oldViewType != null && (int) oldViewType == viewType
+                    ? child : getScrapView(viewType);
+            View view = mAdapter.getView(position, convertView, SwipeStack.this);
+            view.setTag(R.id.view_type, viewType);
+            if (mAdapter.hasStableIds()) {
+                view.setTag(R.id.item_id, mAdapter.getItemId(position));
+            }
+
+            if (view == child) {
+                int oldWidth = child.getMeasuredWidth();
+                int oldHeight = child.getMeasuredHeight();
+                mSnapshotRenderer.markDirty(child);
+                invalidate();
+                measureView(child);
+                if (oldWidth != child.getMeasuredWidth() || oldHeight != child.getMeasuredHeight()) {
+                    updateStackInPlace();
+                }
+                return;
+            }
+
+            CardState.get(view).isNew = false;
+            CardState.get(view).rotation = CardState.get(child).rotation;
+            view.setRotation(child.getRotation());
+            view.setX(child.getX());
+            view.setY(child.getY());
+            view.setScaleX(child.getScaleX());
+            view.setScaleY(child.getScaleY());
+            if (hasPermanentLayers()) {
+                view.setLayerType(LAYER_TYPE_HARDWARE, null);
+            }
+
+            if (child == getTopView()) {
+                mSwipeHelper.unregisterObservedView();
+                mTopCard = null;
+            }
+
+            removeViewInLayout(child);
+            recycleView(child);
+            measureView(view);
+            addViewInLayout(view, index, getLayoutParams(view), true);
+            updateStackInPlace();
+        }
+
+        @Override
+        public void onDataSetChanged() {
+            // The views take over changes when they are rebound
+        }
+
+        @Override
+        public void layoutCard(int index, int topIndex, int left) {
+            layoutChild(getChildAt(index), index, topIndex, left);
+        }
+
+        @Override
+        public int getMeasuredWidth(CardState card) {
+            return card.view.getMeasuredWidth();
+        }
+
+        @Override
+        public int getMeasuredHeight(CardState card) {
+            return card.view.getMeasuredHeight();
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            drawChildren(canvas);
+        }
+
+        @Override
+        public boolean onTouchEvent(MotionEvent event) {
+            return false;
+        }
+    }
+
     public interface SwipeStackListener {
         /**
          * Called when a view has been dismissed to the left.
@@ -440,6 +2360,31 @@ public class SwipeStack extends ViewGroup {
         void onStackEmpty();
     }
 
+    /**
+     * Interface definition for a prefetcher which loads the media of upcoming
+     * cards, e.g. into a {@link link.fls.swipestack.util.BitmapCache}.
+     * All methods are called on the main thread.
+     */
+    public interface MediaPrefetcher {
+        /**
+         * Called when a position enters the lookahead window.
+         *
+         * @param position The position of the item in the currently set adapter.
+         * @param width    The measured width of the top card.
+         * @param height   The measured height of the top card.
+         */
+        void onPrefetch(int position, int width, int height);
+
+        /**
+         * Called when a position has been swiped, left the lookahead window or
+         * its item has changed. The position refers to the item which was
+         * passed to {@link #onPrefetch(int, int, int)}.
+         *
+         * @param position The position passed to {@link #onPrefetch(int, int, int)}.
+         */
+        void onCancelPrefetch(int position);
+    }
+
     /**
      * Interface definition for a callback to be invoked when the user
      * starts / stops interacting with the top view of the stack.
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.widget.BaseAdapter;
+
+import java.util.ArrayList;
+
+/**
+ * Base class for adapters which can tell a {@link SwipeStack} exactly which items
+ * have been inserted, removed or changed. The SwipeStack then only rebinds the
+ * affected cards instead of reacting to a full {@link #notifyDataSetChanged()}.
+ * Appending items behind the visible stack does not cause a layout pass at all.
+ */
+public abstract class SwipeStackAdapter extends BaseAdapter {
+
+    private final ArrayList<RangeObserver> mRangeObservers = new ArrayList<>();
+
+    /**
+     * Notify the attached stacks that the item at the given position has changed.
+     *
+     * @param position Position of the changed item.
+     */
+    public void notifyItemChanged(int position) {
+        notifyItemRangeChanged(position, 1);
+    }
+
+    /**
+     * Notify the attached stacks that the given range of items has changed.
+     *
+     * @param positionStart Position of the first changed item.
+     * @param itemCount     Number of changed items.
+     */
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        if (mRangeObservers.isEmpty()) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        for (int i = mRangeObservers.size() - 1; i >= 0; i--) {
+            mRangeObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Notify the attached stacks that an item has been inserted at the given position.
+     *
+     * @param position Position of the inserted item.
+     */
+    public void notifyItemInserted(int position) {
+        notifyItemRangeInserted(position, 1);
+    }
+
+    /**
+     * Notify the attached stacks that the given range of items has been inserted.
+     *
+     * @param positionStart Position of the first inserted item.
+     * @param itemCount     Number of inserted items.
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        if (mRangeObservers.isEmpty()) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        for (int i = mRangeObservers.size() - 1; i >= 0; i--) {
+            mRangeObservers.get(i).onItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Notify the attached stacks that the item at the given position has been removed.
+     *
+     * @param position Former position of the removed item.
+     */
+    public void notifyItemRemoved(int position) {
+        notifyItemRangeRemoved(position, 1);
+    }
+
+    /**
+     * Notify the attached stacks that the given range of items has been removed.
+     *
+     * @param positionStart Former position of the first removed item.
+     * @param itemCount     Number of removed items.
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        if (mRangeObservers.isEmpty()) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        for (int i = mRangeObservers.size() - 1; i >= 0; i--) {
+            mRangeObservers.get(i).onItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Called by an attached {@link SwipeStack} when the position of its top card changes.
+     */
+    void onStackPositionChanged(int position) {
+    }
+
+    void registerRangeObserver(RangeObserver observer) {
+        if (!mRangeObservers.contains(observer)) {
+            mRangeObservers.add(observer);
+        }
+    }
+
+    void unregisterRangeObserver(RangeObserver observer) {
+        mRangeObservers.remove(observer);
+    }
+
+    /**
+     * Receives fine grained change notifications from a {@link SwipeStackAdapter}.
+     */
+    interface RangeObserver {
+        void onItemRangeChanged(int positionStart, int itemCount);
+
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        void onItemRangeRemoved(int positionStart, int itemCount);
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Collects timing information of a {@link SwipeStack} into histograms.
+ * Attach an instance with {@link SwipeStack#setMetrics(SwipeStackMetrics)} and
+ * read the histograms periodically, e.g. before calling {@link #reset()}.
+ * Recording happens on the main thread, reading is safe from any thread.
+ */
+public class SwipeStackMetrics {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667L;
+
+    private static final long[] MILLIS_BOUNDS =
+            {1, 2, 4, 8, 16, 24, 32, 48, 64, 128, 256, 512};
+    private static final long[] PIXELS_BOUNDS =
+            {1, 2, 4, 8, 16, 32, 64, 128};
+    private static final long[] MICROS_BOUNDS =
+            {50, 100, 250, 500, 1000, 2000, 4000, 8000, 16000, 32000, 64000};
+
+    private final Histogram mTouchLatency = new Histogram(MILLIS_BOUNDS);
+    private final Histogram mFrameTime = new Histogram(MILLIS_BOUNDS);
+    private final Histogram mAddViewTime = new Histogram(MICROS_BOUNDS);
+    private final Histogram mGetViewTime = new Histogram(MICROS_BOUNDS);
+    private final Histogram mLayoutTime = new Histogram(MICROS_BOUNDS);
+    private final Histogram mReorderTime = new Histogram(MICROS_BOUNDS);
+    private final Histogram mDismissTime = new Histogram(MILLIS_BOUNDS);
+    private final Histogram mPredictionError = new Histogram(PIXELS_BOUNDS);
+
+    private final Choreographer.FrameCallback mFrameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    private long mLastFrameTimeNanos;
+    private long mTrackFramesUntil;
+    private boolean mIsTrackingFrames;
+    private boolean mIsFrameCallbackPosted;
+    private int mJankyFrames;
+    private int mDroppedFrames;
+    private int mCoalescedMoves;
+    private int mInPlaceUpdates;
+    private int mChildLayouts;
+    private long mOccludedDraws;
+
+    /**
+     * Returns the delay between a touch event and its handling by the
+     * swipe helper, in milliseconds.
+     */
+    public Histogram getTouchLatency() {
+        return mTouchLatency;
+    }
+
+    /**
+     * Returns the duration of the frames drawn while a view is dragged or
+     * while the stack settles afterwards, in milliseconds.
+     */
+    public Histogram getFrameTime() {
+        return mFrameTime;
+    }
+
+    /**
+     * Returns the time spent adding a card to the stack, in microseconds.
+     */
+    public Histogram getAddViewTime() {
+        return mAddViewTime;
+    }
+
+    /**
+     * Returns the time spent in {@link android.widget.Adapter#getView}, in microseconds.
+     */
+    public Histogram getGetViewTime() {
+        return mGetViewTime;
+    }
+
+    /**
+     * Returns the duration of the layout passes, in microseconds.
+     */
+    public Histogram getLayoutTime() {
+        return mLayoutTime;
+    }
+
+    /**
+     * Returns the time spent positioning the cards, in microseconds.
+     */
+    public Histogram getReorderTime() {
+        return mReorderTime;
+    }
+
+    /**
+     * Returns the time from the start of a dismiss animation until the view
+     * has been removed from the stack, in milliseconds. The number of recorded
+     * values is the number of dismissed views.
+     */
+    public Histogram getDismissTime() {
+        return mDismissTime;
+    }
+
+    /**
+     * Returns the distance between the position predicted for a frame and the
+     * actual touch position at that time, in pixels. Only recorded while touch
+     * prediction is enabled.
+     */
+    public Histogram getPredictionError() {
+        return mPredictionError;
+    }
+
+    /**
+     * Returns the number of tracked frames which took longer than
+     * one and a half frame intervals.
+     */
+    public synchronized int getJankyFrames() {
+        return mJankyFrames;
+    }
+
+    /**
+     * Returns the number of frame intervals which were skipped while tracking frames.
+     */
+    public synchronized int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Returns the number of move events which were replaced by a later one
+     * before the dragged view got updated on the next frame.
+     */
+    public synchronized int getCoalescedMoves() {
+        return mCoalescedMoves;
+    }
+
+    /**
+     * Returns the number of layout passes of the stack. Same as the count of
+     * {@link #getLayoutTime()}.
+     */
+    public long getLayoutPasses() {
+        return mLayoutTime.getCount();
+    }
+
+    /**
+     * Returns the number of times the stack was updated after a dismissal or a
+     * data change without requesting a layout pass.
+     */
+    public synchronized int getInPlaceUpdates() {
+        return mInPlaceUpdates;
+    }
+
+    /**
+     * Returns the number of times a card had to be laid out because it was
+     * new or its size changed.
+     */
+    public synchronized int getChildLayouts() {
+        return mChildLayouts;
+    }
+
+    /**
+     * Returns the number of times a card was not drawn because it was
+     * completely covered by a card above it.
+     */
+    public synchronized long getOccludedDraws() {
+        return mOccludedDraws;
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        mTouchLatency.reset();
+        mFrameTime.reset();
+        mAddViewTime.reset();
+        mGetViewTime.reset();
+        mLayoutTime.reset();
+        mReorderTime.reset();
+        mDismissTime.reset();
+        mPredictionError.reset();
+
+        synchronized (this) {
+            mJankyFrames = 0;
+            mDroppedFrames = 0;
+            mCoalescedMoves = 0;
+            mInPlaceUpdates = 0;
+            mChildLayouts = 0;
+            mOccludedDraws = 0;
+        }
+    }
+
+    void setRefreshRate(float refreshRate) {
+        if (refreshRate > 0) {
+            mFrameIntervalNanos = (long) (1000 * NANOS_PER_MILLI / refreshRate);
+        }
+    }
+
+    void recordTouchLatency(long eventTimeMillis) {
+        mTouchLatency.record(SystemClock.uptimeMillis() - eventTimeMillis);
+    }
+
+    synchronized void recordCoalescedMove() {
+        mCoalescedMoves++;
+    }
+
+    synchronized void recordInPlaceUpdate() {
+        mInPlaceUpdates++;
+    }
+
+    synchronized void recordChildLayout() {
+        mChildLayouts++;
+    }
+
+    synchronized void recordOccludedDraws(int count) {
+        mOccludedDraws += count;
+    }
+
+    void recordAddView(long startNanos) {
+        mAddViewTime.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    void recordGetView(long startNanos) {
+        mGetViewTime.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    void recordLayout(long startNanos) {
+        mLayoutTime.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    void recordReorder(long startNanos) {
+        mReorderTime.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    void recordPredictionError(float distance) {
+        mPredictionError.record(Math.round(distance));
+    }
+
+    void recordDismiss(long startNanos) {
+        mDismissTime.record((System.nanoTime() - startNanos) / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Writes a summary of all histograms and counters, one per line. The output
+     * is stable so it can be stored as a baseline and compared to later runs.
+     */
+    public void dump(PrintWriter writer) {
+        dumpHistogram(writer, "touchLatencyMs", mTouchLatency);
+        dumpHistogram(writer, "frameTimeMs", mFrameTime);
+        dumpHistogram(writer, "addViewUs", mAddViewTime);
+        dumpHistogram(writer, "getViewUs", mGetViewTime);
+        dumpHistogram(writer, "layoutUs", mLayoutTime);
+        dumpHistogram(writer, "reorderUs", mReorderTime);
+        dumpHistogram(writer, "dismissMs", mDismissTime);
+        dumpHistogram(writer, "predictionErrorPx", mPredictionError);
+        writer.println("jankyFrames=" + getJankyFrames());
+        writer.println("droppedFrames=" + getDroppedFrames());
+        writer.println("coalescedMoves=" + getCoalescedMoves());
+        writer.println("layoutPasses=" + getLayoutPasses());
+        writer.println("inPlaceUpdates=" + getInPlaceUpdates());
+        writer.println("childLayouts=" + getChildLayouts());
+        writer.println("occludedDraws=" + getOccludedDraws());
+        writer.flush();
+    }
+
+    private static void dumpHistogram(PrintWriter writer, String name, Histogram histogram) {
+        writer.println(String.format(Locale.US,
+                "%s count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+                name, histogram.getCount(), histogram.getMean(),
+                histogram.getPercentile(50), histogram.getPercentile(90),
+                histogram.getPercentile(99), histogram.getMax()));
+    }
+
+    /**
+     * Starts recording frame times until {@link #endFrameTracking(long)} is called.
+     */
+    void beginFrameTracking() {
+        mIsTrackingFrames = true;
+        if (!mIsFrameCallbackPosted) {
+            mIsFrameCallbackPosted = true;
+            mLastFrameTimeNanos = 0;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * Keeps recording frame times for the given settle duration and stops afterwards.
+     */
+    void endFrameTracking(long settleMillis) {
+        mIsTrackingFrames = false;
+        mTrackFramesUntil = Math.max(mTrackFramesUntil,
+                SystemClock.uptimeMillis() + settleMillis);
+    }
+
+    void stopFrameTracking() {
+        mIsTrackingFrames = false;
+        mTrackFramesUntil = 0;
+        if (mIsFrameCallbackPosted) {
+            mIsFrameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        if (mLastFrameTimeNanos > 0) {
+            long interval = frameTimeNanos - mLastFrameTimeNanos;
+            mFrameTime.record(interval / NANOS_PER_MILLI);
+
+            if (interval * 2 > mFrameIntervalNanos * 3) {
+                synchronized (this) {
+                    mJankyFrames++;
+                    mDroppedFrames += (int) ((interval + mFrameIntervalNanos / 2)
+                            / mFrameIntervalNanos) - 1;
+                }
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        if (mIsTrackingFrames || SystemClock.uptimeMillis() < mTrackFramesUntil) {
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        } else {
+            mIsFrameCallbackPosted = false;
+        }
+    }
+
+    /**
+     * A histogram with fixed bucket bounds. Each bucket counts the values
+     * which are less than or equal to its upper bound and greater than the
+     * bound of the previous bucket. The last bucket counts all larger values.
+     */
+    public static class Histogram {
+
+        private final long[] mUpperBounds;
+        private final long[] mCounts;
+        private long mCount;
+        private long mSum;
+        private long mMax;
+
+        Histogram(long[] upperBounds) {
+            mUpperBounds = upperBounds;
+            mCounts = new long[upperBounds.length + 1];
+        }
+
+        synchronized void record(long value) {
+            int bucket = 0;
+            while (bucket < mUpperBounds.length && value > mUpperBounds[bucket]) {
+                bucket++;
+            }
+
+            mCounts[bucket]++;
+            mCount++;
+            mSum += value;
+            mMax = Math.max(mMax, value);
+        }
+
+        /**
+         * Returns the number of buckets, including the overflow bucket.
+         */
+        public int getBucketCount() {
+            return mCounts.length;
+        }
+
+        /**
+         * Returns the inclusive upper bound of the given bucket or
+         * {@link Long#MAX_VALUE} for the overflow bucket.
+         */
+        public long getBucketUpperBound(int bucket) {
+            return bucket < mUpperBounds.length ? mUpperBounds[bucket] : Long.MAX_VALUE;
+        }
+
+        /**
+         * Returns the number of values recorded in the given bucket.
+         */
+        public synchronized long getBucketValueCount(int bucket) {
+            return mCounts[bucket];
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getMax() {
+            return mMax;
+        }
+
+        public synchronized double getMean() {
+            return mCount > 0 ? (double) mSum / mCount : 0;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given percentile.
+         *
+         * @param percentile A value between 0 and 100.
+         */
+        public synchronized long getPercentile(float percentile) {
+            long threshold = (long) Math.ceil(mCount * percentile / 100f);
+            long count = 0;
+            for (int bucket = 0; bucket < mCounts.length; bucket++) {
+                count += mCounts[bucket];
+                if (count >= threshold && count > 0) {
+                    return bucket < mUpperBounds.length ? mUpperBounds[bucket] : mMax;
+                }
+            }
+            return 0;
+        }
+
+        public synchronized void reset() {
+            for (int bucket = 0; bucket < mCounts.length; bucket++) {
+                mCounts[bucket] = 0;
+            }
+            mCount = 0;
+            mSum = 0;
+            mMax = 0;
+        }
+    }
+}
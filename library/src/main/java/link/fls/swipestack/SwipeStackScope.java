@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.content.ComponentCallbacks2;
+import android.widget.Adapter;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import link.fls.swipestack.util.BitmapCache;
+
+/**
+ * Resources shared by several {@link SwipeStack} instances, e.g. one stack per
+ * tab of a screen. Attach the stacks with {@link SwipeStack#setScope(SwipeStackScope)}.
+ * <p>
+ * Stacks in a scope share their recycled views, their snapshot bitmaps and one
+ * {@link BitmapCache} with a global budget. Background work runs on the threads
+ * of the scope, where the stacks take turns, so adding stacks adds neither
+ * threads nor bitmap memory. Recycled views are shared between stacks using
+ * the same adapter class, so the stacks of a scope should live in the same window.
+ * </p>
+ * <p>
+ * The scope has to be used on the main thread.
+ * </p>
+ */
+public class SwipeStackScope {
+
+    public static final int DEFAULT_THREAD_COUNT = 1;
+
+    private final HashMap<Class<?>, ViewRecycler> mRecyclers = new HashMap<>();
+    private final SnapshotRenderer mSnapshotRenderer = new SnapshotRenderer();
+    private final Random mRandom = new Random();
+    private final FairExecutor mExecutor;
+    private final BitmapCache mBitmapCache;
+
+    private int mRecyclePoolSize = SwipeStack.DEFAULT_RECYCLE_POOL_SIZE;
+
+    /**
+     * @param maxBitmapBytes The number of bytes the bitmaps of all stacks may occupy.
+     */
+    public SwipeStackScope(int maxBitmapBytes) {
+        this(maxBitmapBytes, DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * @param maxBitmapBytes The number of bytes the bitmaps of all stacks may occupy.
+     * @param threadCount    The number of background threads of the scope.
+     */
+    public SwipeStackScope(int maxBitmapBytes, int threadCount) {
+        mExecutor = new FairExecutor("SwipeStackScope", threadCount);
+        mBitmapCache = new BitmapCache(maxBitmapBytes, mExecutor.newLane());
+    }
+
+    /**
+     * Returns the bitmap cache shared by all stacks of this scope. Stacks decode
+     * through their own {@link SwipeStack#getBitmapCache()} which shares these
+     * bitmaps but takes turns with the other stacks.
+     */
+    public BitmapCache getBitmapCache() {
+        return mBitmapCache;
+    }
+
+    /**
+     * Returns a new executor running its tasks on the threads of this scope, taking
+     * turns with the other executors of the scope. Shut it down once it is unused.
+     */
+    public ExecutorService newExecutor() {
+        return mExecutor.newLane();
+    }
+
+    /**
+     * Returns the maximum number of views kept per adapter class and view type
+     * for reuse by any stack of this scope.
+     */
+    public int getRecyclePoolSize() {
+        return mRecyclePoolSize;
+    }
+
+    /**
+     * Sets the maximum number of views kept per adapter class and view type for
+     * reuse by any stack of this scope. A size of 0 disables recycling.
+     */
+    public void setRecyclePoolSize(int size) {
+        mRecyclePoolSize = size;
+        for (ViewRecycler recycler : mRecyclers.values()) {
+            recycler.setMaxScrapViews(size);
+        }
+    }
+
+    /**
+     * Drops the recycled views and cached bitmaps and stops the background threads.
+     * The scope can't be used afterwards.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+        mBitmapCache.trimToSize(0);
+        mRecyclers.clear();
+        mSnapshotRenderer.clearPool();
+    }
+
+    ViewRecycler getRecycler(Adapter adapter) {
+        ViewRecycler recycler = mRecyclers.get(adapter.getClass());
+        if (recycler == null) {
+            recycler = new ViewRecycler(mRecyclePoolSize);
+            mRecyclers.put(adapter.getClass(), recycler);
+        }
+        return recycler;
+    }
+
+    SnapshotRenderer getSnapshotRenderer() {
+        return mSnapshotRenderer;
+    }
+
+    Random getRandom() {
+        return mRandom;
+    }
+
+    /**
+     * Trims the shared bitmaps. Every stack of the scope forwards the trim
+     * levels it receives, so trimming depends on the level only.
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mBitmapCache.trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mBitmapCache.trimToSize(mBitmapCache.getMaxSize() / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mBitmapCache.trimToSize(mBitmapCache.getMaxSize() / 2);
+        }
+    }
+}
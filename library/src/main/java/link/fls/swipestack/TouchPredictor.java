@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+/**
+ * Extrapolates a dragged position to the time a frame will be displayed, based on
+ * the most recent samples. The prediction is limited in time and distance and
+ * falls back to the last sample when the movement changes direction, so a wrong
+ * guess never throws the view far off.
+ */
+class TouchPredictor {
+
+    private static final int SAMPLE_COUNT = 4;
+    private static final long MAX_SAMPLE_AGE_MILLIS = 50;
+    private static final long MAX_PREDICTION_MILLIS = 20;
+
+    private final float[] mX = new float[SAMPLE_COUNT];
+    private final float[] mY = new float[SAMPLE_COUNT];
+    private final long[] mTime = new long[SAMPLE_COUNT];
+    private final float mMaxDistance;
+
+    private int mNewest = -1;
+    private int mSize;
+
+    private boolean mHasPrediction;
+    private float mPredictedX;
+    private float mPredictedY;
+    private long mPredictedTime;
+
+    /**
+     * @param maxDistance The maximum distance in pixels a prediction may be ahead
+     *                    of the last sample.
+     */
+    TouchPredictor(float maxDistance) {
+        mMaxDistance = maxDistance;
+    }
+
+    void reset() {
+        mNewest = -1;
+        mSize = 0;
+        mHasPrediction = false;
+    }
+
+    /**
+     * Adds a sample, which has to be newer than the previous ones.
+     *
+     * @return The distance between the last prediction for a time up to this
+     * sample and the actual position at that time, or -1 if there is none.
+     */
+    float addSample(float x, float y, long timeMillis) {
+        float error = -1;
+        if (mHasPrediction && mSize > 0 && timeMillis >= mPredictedTime) {
+            // Interpolate where the finger actually was at the predicted time
+            long previousTime = mTime[mNewest];
+            float fraction = timeMillis > previousTime
+                    ? (float) (mPredictedTime - previousTime) / (timeMillis - previousTime) : 1f;
+            fraction = Math.max(0f, Math.min(fraction, 1f));
+            float actualX = mX[mNewest] + (x - mX[mNewest]) * fraction;
+            float actualY = mY[mNewest] + (y - mY[mNewest]) * fraction;
+            error = (float) Math.hypot(mPredictedX - actualX, mPredictedY - actualY);
+            mHasPrediction = false;
+        }
+
+        mNewest = (mNewest + 1) % SAMPLE_COUNT;
+        mX[mNewest] = x;
+        mY[mNewest] = y;
+        mTime[mNewest] = timeMillis;
+        mSize = Math.min(mSize + 1, SAMPLE_COUNT);
+        return error;
+    }
+
+    /**
+     * Predicts the position at the given time and stores it in the given array.
+     */
+    void predict(long timeMillis, float[] out) {
+        out[0] = mX[Math.max(mNewest, 0)];
+        out[1] = mY[Math.max(mNewest, 0)];
+        if (mSize < 3) return;
+
+        int previous = (mNewest + SAMPLE_COUNT - 1) % SAMPLE_COUNT;
+        int oldest = (mNewest + SAMPLE_COUNT - (mSize - 1)) % SAMPLE_COUNT;
+        long newestTime = mTime[mNewest];
+        long duration = newestTime - mTime[oldest];
+        long lastDuration = newestTime - mTime[previous];
+        if (duration <= 0 || lastDuration <= 0 || duration > MAX_SAMPLE_AGE_MILLIS) return;
+
+        float velocityX = (mX[mNewest] - mX[oldest]) / duration;
+        float velocityY = (mY[mNewest] - mY[oldest]) / duration;
+        float lastVelocityX = (mX[mNewest] - mX[previous]) / lastDuration;
+        float lastVelocityY = (mY[mNewest] - mY[previous]) / lastDuration;
+
+        // The finger turned around, don't extrapolate the old direction
+        if (velocityX * lastVelocityX + velocityY * lastVelocityY <= 0) return;
+
+        long horizon = Math.min(timeMillis - newestTime, MAX_PREDICTION_MILLIS);
+        if (horizon <= 0) return;
+
+        float dx = velocityX * horizon;
+        float dy = velocityY * horizon;
+        float distance = (float) Math.hypot(dx, dy);
+        if (distance > mMaxDistance) {
+            dx *= mMaxDistance / distance;
+            dy *= mMaxDistance / distance;
+        }
+
+        out[0] += dx;
+        out[1] += dy;
+
+        mHasPrediction = true;
+        mPredictedX = out[0];
+        mPredictedY = out[1];
+        mPredictedTime = newestTime + horizon;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps dismissed views around so they can be handed back to the adapter
+ * as the convertView of a later {@link android.widget.Adapter#getView} call.
+ * Views are grouped by the view type reported by the adapter.
+ */
+class ViewRecycler {
+
+    private final SparseArray<ArrayDeque<View>> mScrapViews = new SparseArray<>();
+
+    private int mMaxScrapViews;
+
+    ViewRecycler(int maxScrapViews) {
+        mMaxScrapViews = maxScrapViews;
+    }
+
+    /**
+     * Returns a previously recycled view of the given type or null if none is available.
+     */
+    View getScrapView(int viewType) {
+        ArrayDeque<View> scrap = mScrapViews.get(viewType);
+        return scrap != null ? scrap.poll() : null;
+    }
+
+    /**
+     * Puts a view into the pool for the given type. The view is dropped
+     * if the pool for this type is already full.
+     */
+    void addScrapView(View view, int viewType) {
+        if (mMaxScrapViews <= 0 || viewType < 0) return;
+
+        ArrayDeque<View> scrap = mScrapViews.get(viewType);
+        if (scrap == null) {
+            scrap = new ArrayDeque<>(mMaxScrapViews);
+            mScrapViews.put(viewType, scrap);
+        }
+
+        if (scrap.size() < mMaxScrapViews) {
+            resetView(view);
+            scrap.offer(view);
+        }
+    }
+
+    void setMaxScrapViews(int maxScrapViews) {
+        mMaxScrapViews = maxScrapViews;
+
+        for (int i = 0; i < mScrapViews.size(); i++) {
+            ArrayDeque<View> scrap = mScrapViews.valueAt(i);
+            while (scrap.size() > maxScrapViews) {
+                scrap.poll();
+            }
+        }
+    }
+
+    int getMaxScrapViews() {
+        return mMaxScrapViews;
+    }
+
+    int getScrapViewCount() {
+        int count = 0;
+        for (int i = 0; i < mScrapViews.size(); i++) {
+            count += mScrapViews.valueAt(i).size();
+        }
+        return count;
+    }
+
+    void clear() {
+        mScrapViews.clear();
+    }
+
+    private static void resetView(View view) {
+        view.animate().setListener(null);
+        view.animate().cancel();
+        view.setOnTouchListener(null);
+        view.setTranslationX(0);
+        view.setTranslationY(0);
+        view.setRotation(0);
+        view.setScaleX(1);
+        view.setScaleY(1);
+        view.setAlpha(1);
+        view.setLayerType(View.LAYER_TYPE_NONE, null);
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * LRU cache for decoded bitmaps with a budget in bytes. Bitmaps are decoded on a
+ * background thread, subsampled and then scaled down to the requested size, so a
+ * card can bind an image which already fits its measured dimensions.
+ * <p>
+ * {@link #load(String, Decoder, int, int, Callback)} and {@link #cancel(String)}
+ * have to be called on the main thread, callbacks are delivered there as well.
+ * </p>
+ */
+public class BitmapCache {
+
+    private final LruCache<String, Bitmap> mCache;
+    private final HashMap<String, Request> mRequests = new HashMap<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor;
+
+    /**
+     * @param maxBytes The maximum number of bytes the cached bitmaps may occupy.
+     */
+    public BitmapCache(int maxBytes) {
+        this(maxBytes, Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "BitmapCache");
+            }
+        }));
+    }
+
+    /**
+     * @param maxBytes The maximum number of bytes the cached bitmaps may occupy.
+     * @param executor The executor the bitmaps are decoded on.
+     */
+    public BitmapCache(int maxBytes, ExecutorService executor) {
+        mCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        mExecutor = executor;
+    }
+
+    /**
+     * Creates a cache which shares the bitmaps and the budget of the given cache,
+     * but keeps its own requests and decodes them on the given executor.
+     * {@link #shutdown()} only stops this executor and keeps the shared bitmaps.
+     *
+     * @param shared   The cache to share the bitmaps with.
+     * @param executor The executor the bitmaps are decoded on.
+     */
+    public BitmapCache(BitmapCache shared, ExecutorService executor) {
+        mCache = shared.mCache;
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the cached bitmap for the given key or null if it is not cached.
+     */
+    @Nullable
+    public Bitmap get(String key) {
+        return mCache.get(key);
+    }
+
+    public void put(String key, Bitmap bitmap) {
+        mCache.put(key, bitmap);
+    }
+
+    public void remove(String key) {
+        mCache.remove(key);
+    }
+
+    /**
+     * Returns the number of bytes occupied by the cached bitmaps.
+     */
+    public int getSize() {
+        return mCache.size();
+    }
+
+    public int getMaxSize() {
+        return mCache.maxSize();
+    }
+
+    /**
+     * Evicts cached bitmaps until they occupy at most the given number of bytes.
+     */
+    public void trimToSize(int maxBytes) {
+        mCache.trimToSize(maxBytes);
+    }
+
+    /**
+     * Decodes the bitmap for the given key in the background unless it is already
+     * cached or being decoded. The callback is invoked right away if the bitmap is
+     * cached.
+     *
+     * @param key      The key the bitmap is cached with.
+     * @param decoder  Decodes the bitmap.
+     * @param width    The width the bitmap should at least have. Larger bitmaps
+     *                 are scaled down, keeping their aspect ratio.
+     * @param height   The height the bitmap should at least have.
+     * @param callback The callback or null to just prefetch the bitmap.
+     */
+    public void load(String key, Decoder decoder, int width, int height,
+                     @Nullable Callback callback) {
+        Bitmap bitmap = mCache.get(key);
+        if (bitmap != null) {
+            if (callback != null) callback.onBitmapLoaded(key, bitmap);
+            return;
+        }
+
+        Request request = mRequests.get(key);
+        if (request == null) {
+            request = new Request(key, decoder, width, height);
+            mRequests.put(key, request);
+            request.future = mExecutor.submit(request);
+        }
+
+        if (callback != null) request.callbacks.add(callback);
+    }
+
+    /**
+     * Cancels the decoding of the bitmap for the given key. Callbacks waiting for
+     * it are not invoked.
+     */
+    public void cancel(String key) {
+        Request request = mRequests.remove(key);
+        if (request != null) {
+            request.future.cancel(false);
+        }
+    }
+
+    /**
+     * Cancels all pending decodes and stops the background thread.
+     */
+    public void shutdown() {
+        for (Request request : mRequests.values()) {
+            request.future.cancel(false);
+        }
+        mRequests.clear();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Returns the largest power of two sample size which keeps the decoded
+     * bitmap at least as large as the requested size.
+     */
+    public static int calculateInSampleSize(int bitmapWidth, int bitmapHeight,
+                                            int width, int height) {
+        int sampleSize = 1;
+        if (width <= 0 || height <= 0) return sampleSize;
+
+        while (bitmapWidth / (sampleSize * 2) >= width
+                && bitmapHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Scales the bitmap down so it just covers the requested size, as subsampling
+     * by powers of two may leave it up to twice as wide and high. Returns the
+     * bitmap itself if it isn't larger than that.
+     */
+    static Bitmap scaleToCover(Bitmap bitmap, int width, int height) {
+        if (width <= 0 || height <= 0) return bitmap;
+
+        float scale = Math.max((float) width / bitmap.getWidth(),
+                (float) height / bitmap.getHeight());
+        int scaledWidth = Math.round(bitmap.getWidth() * scale);
+        int scaledHeight = Math.round(bitmap.getHeight() * scale);
+        if (scale >= 1f || scaledWidth >= bitmap.getWidth()
+                || scaledHeight >= bitmap.getHeight()) {
+            return bitmap;
+        }
+
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    private void onRequestFinished(Request request, Bitmap bitmap) {
+        if (mRequests.get(request.key) != request) return;
+
+        mRequests.remove(request.key);
+        if (bitmap == null) return;
+
+        mCache.put(request.key, bitmap);
+        for (int i = 0; i < request.callbacks.size(); i++) {
+            request.callbacks.get(i).onBitmapLoaded(request.key, bitmap);
+        }
+    }
+
+    private class Request implements Runnable {
+
+        final String key;
+        final Decoder decoder;
+        final int width;
+        final int height;
+        final ArrayList<Callback> callbacks = new ArrayList<>(1);
+        Future<?> future;
+
+        Request(String key, Decoder decoder, int width, int height) {
+            this.key = key;
+            this.decoder = decoder;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+            try {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                decoder.decode(options);
+
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = calculateInSampleSize(options.outWidth,
+                        options.outHeight, width, height);
+                bitmap = decoder.decode(options);
+                if (bitmap != null) bitmap = scaleToCover(bitmap, width, height);
+            } catch (IOException e) {
+                // The request finishes without a bitmap
+            } finally {
+                // Always finish the request, even if the decoder threw something
+                // else, so the key can be requested again
+                final Bitmap result = bitmap;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRequestFinished(Request.this, result);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Decodes a bitmap, e.g. with {@link BitmapFactory#decodeFile(String, BitmapFactory.Options)}.
+     * It is called twice on a background thread, first with
+     * {@link BitmapFactory.Options#inJustDecodeBounds} set to read the size,
+     * then with the {@link BitmapFactory.Options#inSampleSize} to decode with.
+     */
+    public interface Decoder {
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    /**
+     * Interface definition for a callback to be invoked on the main thread
+     * once a bitmap has been decoded.
+     */
+    public interface Callback {
+        void onBitmapLoaded(String key, Bitmap bitmap);
+    }
+}
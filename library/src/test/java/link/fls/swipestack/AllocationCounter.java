@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+
+/**
+ * Counts the allocations made by the library on the current thread, using the
+ * java-allocation-instrumenter agent the unit tests run with. An allocation is
+ * attributed to the closest caller outside the JDK, so boxing or the growth of a
+ * collection counts for the library method which caused it, while allocations
+ * of the harness and of the Android framework don't count.
+ */
+class AllocationCounter implements Sampler {
+
+    private static final String PACKAGE = "link.fls.swipestack.";
+
+    private final CallerContext mCallers = new CallerContext();
+    private final Thread mThread = Thread.currentThread();
+    private volatile boolean mIsCounting;
+    private boolean mIsSampling;
+    private int mCount;
+    private int mSampleCount;
+    private String mFirstAllocation;
+
+    /**
+     * Returns whether the tests run with the agent, so allocations can be counted.
+     */
+    static boolean isAvailable() {
+        AllocationCounter counter = new AllocationCounter();
+        counter.start();
+        Object probe = new AllocationCounter();
+        counter.stop();
+        return probe != null && counter.mSampleCount > 0;
+    }
+
+    void start() {
+        mCount = 0;
+        mSampleCount = 0;
+        mFirstAllocation = null;
+        mIsCounting = true;
+        AllocationRecorder.addSampler(this);
+    }
+
+    void stop() {
+        mIsCounting = false;
+        AllocationRecorder.removeSampler(this);
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns a description of the first allocation which was counted, to track
+     * down where it came from.
+     */
+    String getFirstAllocation() {
+        return mFirstAllocation;
+    }
+
+    @Override
+    public void sampleAllocation(int count, String desc, Object newObj, long size) {
+        if (!mIsCounting || mIsSampling || Thread.currentThread() != mThread) return;
+        mSampleCount++;
+
+        // Allocations made while sampling would be attributed to the same caller
+        mIsSampling = true;
+        try {
+            if (isCalledFromLibrary()) {
+                mCount++;
+                if (mFirstAllocation == null) mFirstAllocation = describe(desc);
+            }
+        } finally {
+            mIsSampling = false;
+        }
+    }
+
+    private boolean isCalledFromLibrary() {
+        Class[] callers = mCallers.getCallers();
+        for (Class caller : callers) {
+            String className = caller.getName();
+            if (className.startsWith("java.") || className.startsWith("sun.")
+                    || className.startsWith("com.google.monitoring.")
+                    || className.startsWith(AllocationCounter.class.getName())) {
+                continue;
+            }
+            return className.startsWith(PACKAGE) && !isTestClass(className);
+        }
+        return false;
+    }
+
+    private static String describe(String desc) {
+        StackTraceElement[] stack = new Throwable().getStackTrace();
+        for (StackTraceElement element : stack) {
+            String className = element.getClassName();
+            if (className.startsWith(PACKAGE) && !isTestClass(className)) {
+                return desc + " in " + element;
+            }
+        }
+        return desc;
+    }
+
+    private static boolean isTestClass(String className) {
+        int nested = className.indexOf('$');
+        String outer = nested >= 0 ? className.substring(0, nested) : className;
+        return outer.endsWith("Test")
+                || outer.equals(AllocationCounter.class.getName())
+                || outer.equals(SwipeStackHarness.class.getName())
+                || outer.equals(PacedShadowChoreographer.class.getName())
+                || outer.equals(CachedShadowAccessibilityManager.class.getName());
+    }
+
+    /**
+     * Exposes the classes on the stack, which is a lot cheaper than a stack
+     * trace. Robolectric allocates a lot while the counter is active.
+     */
+    private static class CallerContext extends SecurityManager {
+
+        Class[] getCallers() {
+            return getClassContext();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.content.Context;
+import android.view.accessibility.AccessibilityManager;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowAccessibilityManager;
+
+/**
+ * Returns the same accessibility manager for the same context. The default
+ * shadow creates a new one, including a new accessibility service, whenever a
+ * view transform changes, which makes replaying gestures very slow.
+ */
+@Implements(AccessibilityManager.class)
+public class CachedShadowAccessibilityManager extends ShadowAccessibilityManager {
+
+    private static Context sContext;
+    private static AccessibilityManager sInstance;
+
+    @Implementation
+    public static AccessibilityManager getInstance(Context context) throws Exception {
+        if (sInstance == null || sContext != context) {
+            sInstance = ShadowAccessibilityManager.getInstance(context);
+            sContext = context;
+        }
+        return sInstance;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class FairExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private FairExecutor mExecutor;
+
+    @After
+    public void tearDown() {
+        if (mExecutor != null) mExecutor.shutdown();
+    }
+
+    @Test
+    public void lanesTakeTurns() throws InterruptedException {
+        mExecutor = new FairExecutor("test", 1);
+        ExecutorService first = mExecutor.newLane();
+        ExecutorService second = mExecutor.newLane();
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(5);
+
+        // Keeps the only thread busy until all tasks are queued
+        CountDownLatch release = new CountDownLatch(1);
+        first.execute(await(release));
+        first.execute(record(order, "a1", done));
+        first.execute(record(order, "a2", done));
+        first.execute(record(order, "a3", done));
+        second.execute(record(order, "b1", done));
+        second.execute(record(order, "b2", done));
+        release.countDown();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("b1", "a1", "b2", "a2", "a3"), order);
+    }
+
+    @Test
+    public void neverStartsMoreThanMaxThreads() throws InterruptedException {
+        mExecutor = new FairExecutor("test", 2);
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+
+        for (int x = 0; x < 4; x++) {
+            ExecutorService lane = mExecutor.newLane();
+            for (int y = 0; y < 5; y++) {
+                lane.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        threads.add(Thread.currentThread().getName());
+                        int count = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            maxRunning.set(Math.max(maxRunning.get(), count));
+                        }
+                        sleep(2);
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(threads.size() <= 2);
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void failingTaskDoesNotStopThread() throws InterruptedException {
+        mExecutor = new FairExecutor("test", 1);
+        ExecutorService lane = mExecutor.newLane();
+        CountDownLatch done = new CountDownLatch(1);
+
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Expected");
+            }
+        });
+        lane.execute(record(new ArrayList<String>(), "after", done));
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdownLaneOnlyRejectsItsOwnTasks() throws InterruptedException {
+        mExecutor = new FairExecutor("test", 1);
+        ExecutorService first = mExecutor.newLane();
+        ExecutorService second = mExecutor.newLane();
+
+        first.shutdown();
+        assertTrue(first.isShutdown());
+        try {
+            first.execute(record(new ArrayList<String>(), "rejected", new CountDownLatch(1)));
+            fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+
+        CountDownLatch done = new CountDownLatch(1);
+        second.execute(record(new ArrayList<String>(), "second", done));
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(second.isShutdown());
+    }
+
+    @Test
+    public void shutdownNowReturnsPendingTasks() throws InterruptedException {
+        mExecutor = new FairExecutor("test", 1);
+        ExecutorService lane = mExecutor.newLane();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable pending = record(new ArrayList<String>(), "pending", new CountDownLatch(1));
+
+        lane.execute(signalAndAwait(started, release));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        lane.execute(pending);
+
+        assertEquals(Collections.singletonList(pending), lane.shutdownNow());
+        assertFalse(lane.isTerminated());
+
+        release.countDown();
+        assertTrue(lane.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(lane.isTerminated());
+    }
+
+    @Test
+    public void shutdownDropsPendingTasksAndRejectsNewLanes() throws InterruptedException {
+        mExecutor = new FairExecutor("test", 1);
+        ExecutorService lane = mExecutor.newLane();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        lane.execute(signalAndAwait(started, release));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        lane.execute(record(order, "dropped", new CountDownLatch(1)));
+
+        mExecutor.shutdown();
+        release.countDown();
+
+        assertTrue(lane.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(order.isEmpty());
+        try {
+            mExecutor.newLane();
+            fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void doesNotHoldOnToIdleLanes() throws InterruptedException {
+        mExecutor = new FairExecutor("test", 1);
+        ExecutorService lane = mExecutor.newLane();
+        CountDownLatch done = new CountDownLatch(1);
+        lane.execute(record(new ArrayList<String>(), "task", done));
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // Dropped without being shut down, like the lane of a collected stack
+        WeakReference<ExecutorService> reference = new WeakReference<>(lane);
+        lane = null;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (reference.get() != null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+
+        // The executor keeps serving new lanes
+        CountDownLatch next = new CountDownLatch(1);
+        mExecutor.newLane().execute(record(new ArrayList<String>(), "next", next));
+        assertTrue(next.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private static Runnable record(final List<String> order, final String name,
+                                   final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    private static Runnable await(CountDownLatch release) {
+        return signalAndAwait(new CountDownLatch(1), release);
+    }
+
+    private static Runnable signalAndAwait(final CountDownLatch started,
+                                           final CountDownLatch release) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+/**
+ * Runs tests in a Robolectric environment which shares the allocation recorder
+ * of the java-allocation-instrumenter agent, so {@link AllocationCounter} also
+ * sees allocations made inside JDK classes, like boxing or collection growth.
+ */
+public class HarnessTestRunner extends RobolectricGradleTestRunner {
+
+    public HarnessTestRunner(Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @Override
+    public InstrumentationConfiguration createClassLoaderConfig(Config config) {
+        return InstrumentationConfiguration.newBuilder()
+                .withConfig(config)
+                .doNotAcquirePackage("com.google.monitoring")
+                .build();
+    }
+}
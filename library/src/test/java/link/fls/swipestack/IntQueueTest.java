@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntQueueTest {
+
+    @Test
+    public void pollsInOrder() {
+        IntQueue queue = new IntQueue(4);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.poll());
+        assertEquals(2, queue.poll());
+        assertEquals(3, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void growsWhileWrappedAround() {
+        IntQueue queue = new IntQueue(3);
+        queue.offer(0);
+        queue.offer(1);
+        queue.poll();
+        queue.poll();
+
+        // Starts in the middle of the buffer and has to grow twice
+        for (int x = 0; x < 10; x++) {
+            queue.offer(x);
+        }
+
+        assertEquals(10, queue.size());
+        for (int x = 0; x < 10; x++) {
+            assertEquals(x, queue.poll());
+        }
+    }
+
+    @Test
+    public void clearDropsAllValues() {
+        IntQueue queue = new IntQueue(2);
+        queue.offer(1);
+        queue.offer(2);
+
+        queue.clear();
+        queue.offer(3);
+
+        assertEquals(1, queue.size());
+        assertEquals(3, queue.poll());
+    }
+}
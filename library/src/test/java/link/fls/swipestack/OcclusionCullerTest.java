@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.Gravity;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Robolectric doesn't compute view matrices, so the corner math is tested on
+ * quads built here and the views only differ in their layout bounds.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class OcclusionCullerTest {
+
+    private static final int CARD_SIZE = 100;
+    private static final int OUTER = 0;
+    private static final int INNER = 8;
+
+    private final OcclusionCuller mCuller = new OcclusionCuller();
+    private final float[] mCorners = new float[16];
+    private FrameLayout mParent;
+
+    @Before
+    public void setUp() {
+        mParent = new FrameLayout(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void identicalQuadIsContained() {
+        setQuad(OUTER, 0, 0, 1, 0);
+        setQuad(INNER, 0, 0, 1, 0);
+
+        assertTrue(OcclusionCuller.containsCorners(mCorners, OUTER, INNER));
+    }
+
+    @Test
+    public void largerQuadIsNotContained() {
+        setQuad(OUTER, 0, 0, 1, 0);
+        setQuad(INNER, 0, 0, 1.01f, 0);
+
+        assertFalse(OcclusionCuller.containsCorners(mCorners, OUTER, INNER));
+        assertTrue(OcclusionCuller.containsCorners(mCorners, INNER, OUTER));
+    }
+
+    @Test
+    public void movedQuadExposesCorner() {
+        setQuad(OUTER, 1, -1, 1, 0);
+        setQuad(INNER, 0, 0, 1, 0);
+
+        assertFalse(OcclusionCuller.containsCorners(mCorners, OUTER, INNER));
+    }
+
+    @Test
+    public void movedQuadStillContainsSmallerQuad() {
+        setQuad(OUTER, 5, -5, 1, 0);
+        setQuad(INNER, 0, 0, 0.8f, 0);
+
+        assertTrue(OcclusionCuller.containsCorners(mCorners, OUTER, INNER));
+    }
+
+    @Test
+    public void rotatedQuadExposesCorners() {
+        setQuad(OUTER, 0, 0, 1, 10);
+        setQuad(INNER, 0, 0, 1, 0);
+
+        assertFalse(OcclusionCuller.containsCorners(mCorners, OUTER, INNER));
+        assertFalse(OcclusionCuller.containsCorners(mCorners, INNER, OUTER));
+    }
+
+    @Test
+    public void rotatedQuadContainsQuadWithinItsInscribedCircle() {
+        setQuad(OUTER, 0, 0, 1, 30);
+        // The corners are 42 px away from the center, the outer quad's edges 50 px
+        setQuad(INNER, 0, 0, 0.6f, -5);
+
+        assertTrue(OcclusionCuller.containsCorners(mCorners, OUTER, INNER));
+    }
+
+    @Test
+    public void rotatedQuadDoesNotContainQuadBeyondItsEdges() {
+        setQuad(OUTER, 0, 0, 1, 45);
+        // The outer quad's edges are 50 px away from the center, the corners 56 px
+        setQuad(INNER, 0, 0, 0.8f, 0);
+
+        assertFalse(OcclusionCuller.containsCorners(mCorners, OUTER, INNER));
+    }
+
+    @Test
+    public void identicalCardIsOccluded() {
+        View bottom = addCard(CARD_SIZE);
+        View top = addCard(CARD_SIZE);
+
+        assertEquals(1, update());
+        assertTrue(isOccluded(bottom));
+        assertFalse(isOccluded(top));
+    }
+
+    @Test
+    public void largerCardIsNotOccluded() {
+        View bottom = addCard(CARD_SIZE + 2);
+        addCard(CARD_SIZE);
+
+        assertEquals(0, update());
+        assertFalse(isOccluded(bottom));
+    }
+
+    @Test
+    public void translucentCardDoesNotOcclude() {
+        View bottom = addCard(CARD_SIZE);
+        View top = addCard(CARD_SIZE);
+        top.setAlpha(0.99f);
+
+        assertEquals(0, update());
+        assertFalse(isOccluded(bottom));
+    }
+
+    @Test
+    public void invisibleCardDoesNotOcclude() {
+        addCard(CARD_SIZE);
+        View top = addCard(CARD_SIZE);
+        top.setVisibility(View.INVISIBLE);
+
+        assertEquals(0, update());
+    }
+
+    @Test
+    public void occludedCardDoesNotOccludeButTheOneAboveDoes() {
+        View bottom = addCard(CARD_SIZE - 10);
+        View middle = addCard(CARD_SIZE);
+        View top = addCard(CARD_SIZE);
+
+        assertEquals(2, update());
+        assertTrue(isOccluded(bottom));
+        assertTrue(isOccluded(middle));
+        assertFalse(isOccluded(top));
+    }
+
+    @Test
+    public void clearsOcclusionOnceExposed() {
+        View bottom = addCard(CARD_SIZE);
+        View top = addCard(CARD_SIZE);
+        assertEquals(1, update());
+
+        top.setVisibility(View.GONE);
+
+        assertEquals(0, update());
+        assertFalse(isOccluded(bottom));
+    }
+
+    @Test
+    public void growsForMoreChildren() {
+        for (int x = 0; x < 6; x++) addCard(CARD_SIZE);
+
+        assertEquals(5, update());
+    }
+
+    /**
+     * Stores a card sized quad scaled and rotated around its center, which is
+     * moved by the given offset, in clockwise order.
+     */
+    private void setQuad(int offset, float dx, float dy, float scale, float degrees) {
+        double radians = Math.toRadians(degrees);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float half = CARD_SIZE / 2f * scale;
+        float[] x = {-half, half, half, -half};
+        float[] y = {-half, -half, half, half};
+
+        for (int i = 0; i < 4; i++) {
+            mCorners[offset + i * 2] = CARD_SIZE / 2f + dx + x[i] * cos - y[i] * sin;
+            mCorners[offset + i * 2 + 1] = CARD_SIZE / 2f + dy + x[i] * sin + y[i] * cos;
+        }
+    }
+
+    private View addCard(int size) {
+        View card = new View(RuntimeEnvironment.application);
+        mParent.addView(card, new FrameLayout.LayoutParams(size, size, Gravity.CENTER));
+        return card;
+    }
+
+    private int update() {
+        int spec = View.MeasureSpec.makeMeasureSpec(CARD_SIZE * 3, View.MeasureSpec.EXACTLY);
+        mParent.measure(spec, spec);
+        mParent.layout(0, 0, CARD_SIZE * 3, CARD_SIZE * 3);
+        return mCuller.update(mParent);
+    }
+
+    private static boolean isOccluded(View view) {
+        return CardState.get(view).isOccluded;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowChoreographer;
+
+/**
+ * Runs frame callbacks on a fixed {@value SwipeStackHarness#FRAME_MILLIS} ms vsync
+ * grid of the scheduler clock. The default shadow runs them back to back without
+ * advancing the clock, which never ends while a callback reposts itself every
+ * frame, like the frame tracking of {@link SwipeStackMetrics} during a drag.
+ */
+@Implements(Choreographer.class)
+public class PacedShadowChoreographer extends ShadowChoreographer {
+
+    @Override
+    public void postFrameCallbackDelayed(Choreographer.FrameCallback callback, long delayMillis) {
+        long now = SystemClock.uptimeMillis();
+        long frameMillis = SwipeStackHarness.FRAME_MILLIS;
+        long nextFrame = ((now + delayMillis) / frameMillis + 1) * frameMillis;
+        super.postFrameCallbackDelayed(callback, nextFrame - now);
+    }
+
+    @Override
+    public long getFrameTimeNanos() {
+        return SystemClock.uptimeMillis() * 1000000L;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link PagedSwipeStackAdapter} on a stack, checking when pages are
+ * requested, how loaded pages replace the placeholders and which pages are
+ * released behind the stack position.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class PagedSwipeStackAdapterTest {
+
+    private static final String LOADING = "loading";
+    private static final int PAGE_SIZE = 4;
+
+    private static SwipeStackHarness start(TestPagedAdapter adapter) {
+        SwipeStackHarness harness = new SwipeStackHarness(0);
+        harness.stack.setAdapter(adapter);
+        harness.settle();
+        return harness;
+    }
+
+    @Test
+    public void loadedPageReplacesPlaceholders() {
+        TestPagedAdapter adapter = new TestPagedAdapter(2);
+        SwipeStackHarness harness = start(adapter);
+
+        assertEquals(Arrays.asList(0), adapter.requestedPages);
+        assertEquals(Arrays.<Object>asList(LOADING, LOADING, LOADING), harness.getStackedItems());
+
+        adapter.deliver(0, PAGE_SIZE);
+        harness.settle();
+
+        assertEquals(Arrays.<Object>asList(0, 1, 2), harness.getStackedItems());
+        assertEquals(2 * PAGE_SIZE, adapter.getCount());
+        assertEquals(Arrays.asList(0), adapter.requestedPages);
+    }
+
+    @Test
+    public void requestsNextPageAtLowWatermark() {
+        TestPagedAdapter adapter = new TestPagedAdapter(2);
+        SwipeStackHarness harness = start(adapter);
+        adapter.deliver(0, PAGE_SIZE);
+        harness.settle();
+
+        harness.stack.swipeTopViewToLeft();
+        harness.settle();
+        assertEquals(Arrays.asList(0), adapter.requestedPages);
+
+        harness.stack.swipeTopViewToLeft();
+        harness.settle();
+        assertEquals(Arrays.asList(0, 1), adapter.requestedPages);
+        assertEquals(Arrays.<Object>asList(2, 3, LOADING), harness.getStackedItems());
+    }
+
+    @Test
+    public void shortPageEndsData() {
+        TestPagedAdapter adapter = new TestPagedAdapter(2);
+        SwipeStackHarness harness = start(adapter);
+        adapter.deliver(0, PAGE_SIZE);
+        harness.stack.swipeTopViewsToLeft(2);
+        harness.settle();
+
+        adapter.deliver(1, 1);
+        harness.settle();
+
+        assertTrue(adapter.isEndReached());
+        assertEquals(PAGE_SIZE + 1, adapter.getCount());
+        assertEquals(Arrays.<Object>asList(2, 3, 4), harness.getStackedItems());
+
+        harness.stack.swipeTopViewsToLeft(3);
+        harness.settle();
+        assertEquals(1, harness.listener.emptyCount);
+        assertEquals(Arrays.asList(0, 1), adapter.requestedPages);
+    }
+
+    @Test
+    public void releasesPagesBehindStackPosition() {
+        TestPagedAdapter adapter = new TestPagedAdapter(2);
+        adapter.setRetainedPagesBehind(0);
+        SwipeStackHarness harness = start(adapter);
+        adapter.deliver(0, PAGE_SIZE);
+        harness.stack.swipeTopViewsToLeft(2);
+        harness.settle();
+        adapter.deliver(1, PAGE_SIZE);
+        harness.settle();
+
+        harness.stack.swipeTopViewsToLeft(2);
+        harness.settle();
+
+        assertEquals(PAGE_SIZE, harness.stack.getCurrentPosition());
+        assertFalse(adapter.isLoaded(0));
+        assertNull(adapter.getItem(0));
+        assertTrue(adapter.isLoaded(PAGE_SIZE));
+    }
+
+    /**
+     * Records the requested pages and tags each view with its item, or with
+     * {@link #LOADING} for placeholders. The items are their positions.
+     */
+    private static class TestPagedAdapter extends PagedSwipeStackAdapter<Integer> {
+
+        final List<Integer> requestedPages = new ArrayList<>();
+
+        TestPagedAdapter(int lowWatermark) {
+            super(PAGE_SIZE, lowWatermark);
+        }
+
+        void deliver(int page, int count) {
+            List<Integer> items = new ArrayList<>();
+            for (int x = 0; x < count; x++) {
+                items.add(page * PAGE_SIZE + x);
+            }
+            setPage(page, items);
+        }
+
+        @Override
+        protected void onLoadPage(int page) {
+            requestedPages.add(page);
+        }
+
+        @Override
+        protected View getItemView(int position, Integer item, View convertView,
+                                   ViewGroup parent) {
+            View view = getCardView(convertView, parent);
+            view.setTag(item);
+            return view;
+        }
+
+        @Override
+        protected View getLoadingView(int position, View convertView, ViewGroup parent) {
+            View view = getCardView(convertView, parent);
+            view.setTag(LOADING);
+            return view;
+        }
+
+        private static View getCardView(View convertView, ViewGroup parent) {
+            if (convertView != null) return convertView;
+            View view = new SwipeStackHarness.CardView(parent.getContext());
+            view.setLayoutParams(new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT,
+                    ViewGroup.LayoutParams.MATCH_PARENT));
+            return view;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import link.fls.swipestack.SwipeEventChannel.SwipeEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeEventChannelTest {
+
+    private static final int RECORD_SIZE = 32;
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mJournalFile;
+    private RecordingReceiver mReceiver;
+    private SwipeEventChannel mChannel;
+
+    @Before
+    public void setUp() throws IOException {
+        mJournalFile = new File(mFolder.getRoot(), "swipes.journal");
+        mReceiver = new RecordingReceiver();
+    }
+
+    @After
+    public void tearDown() {
+        if (mChannel != null) mChannel.close();
+    }
+
+    @Test
+    public void replaysJournalOfPreviousProcess() throws Exception {
+        writeJournal(3, 0);
+
+        mChannel = new SwipeEventChannel(mJournalFile, mReceiver);
+
+        mReceiver.awaitCount(3);
+        for (int x = 0; x < 3; x++) {
+            assertEvent(mReceiver.getEvent(x), x);
+        }
+        awaitJournalLength(0);
+    }
+
+    @Test
+    public void dropsPartiallyWrittenRecord() throws Exception {
+        writeJournal(2, 10);
+        mReceiver.failures = Integer.MAX_VALUE;
+
+        mChannel = new SwipeEventChannel(mJournalFile, mReceiver);
+        mChannel.record(2, 102, SwipeStack.SWIPE_DIRECTION_ONLY_LEFT, 1002, 302);
+
+        // The new record follows the complete ones instead of the partial one
+        awaitJournalLength(3 * RECORD_SIZE);
+        List<SwipeEvent> journal = readJournal();
+        assertEquals(3, journal.size());
+        for (int x = 0; x < 3; x++) {
+            assertEvent(journal.get(x), x);
+        }
+    }
+
+    @Test
+    public void truncatesJournalOnceDelivered() throws Exception {
+        mChannel = new SwipeEventChannel(mJournalFile, mReceiver, 2);
+        for (int x = 0; x < 5; x++) {
+            record(x);
+        }
+
+        mReceiver.awaitCount(5);
+        for (int x = 0; x < 5; x++) {
+            assertEvent(mReceiver.getEvent(x), x);
+        }
+        assertTrue(mReceiver.getMaxBatchSize() <= 2);
+        awaitJournalLength(0);
+    }
+
+    @Test
+    public void keepsFailedBatchUntilRetry() throws Exception {
+        mReceiver.failures = Integer.MAX_VALUE;
+        mChannel = new SwipeEventChannel(mJournalFile, mReceiver);
+        record(0);
+        record(1);
+
+        mReceiver.awaitAttempts(1);
+        awaitJournalLength(2 * RECORD_SIZE);
+        assertEquals(0, mReceiver.getCount());
+
+        mReceiver.failures = 0;
+        mChannel.retry();
+
+        mReceiver.awaitCount(2);
+        assertEvent(mReceiver.getEvent(0), 0);
+        assertEvent(mReceiver.getEvent(1), 1);
+        awaitJournalLength(0);
+    }
+
+    @Test
+    public void closeDeliversRemainingEvents() throws Exception {
+        mChannel = new SwipeEventChannel(mJournalFile, mReceiver);
+        for (int x = 0; x < 3; x++) {
+            record(x);
+        }
+
+        mChannel.close();
+
+        mReceiver.awaitCount(3);
+        awaitJournalLength(0);
+    }
+
+    @Test
+    public void ignoresEventsRecordedAfterClose() throws Exception {
+        mChannel = new SwipeEventChannel(mJournalFile, mReceiver);
+        record(0);
+        mChannel.close();
+        record(1);
+
+        mReceiver.awaitCount(1);
+        awaitJournalLength(0);
+        Thread.sleep(100);
+        assertEquals(1, mReceiver.getCount());
+    }
+
+    @Test
+    public void keepsOrderBeyondRingCapacity() throws Exception {
+        mChannel = new SwipeEventChannel(mJournalFile, mReceiver);
+        // More than fit into the ring, so some may take the overflow path
+        for (int x = 0; x < 2000; x++) {
+            record(x);
+        }
+
+        mReceiver.awaitCount(2000);
+        for (int x = 0; x < 2000; x++) {
+            assertEvent(mReceiver.getEvent(x), x);
+        }
+        awaitJournalLength(0);
+    }
+
+    @Test
+    public void interruptDeliversRemainingEventsAndStops() throws Exception {
+        Set<Thread> previousThreads = Thread.getAllStackTraces().keySet();
+        mChannel = new SwipeEventChannel(mJournalFile, mReceiver);
+        for (int x = 0; x < 3; x++) {
+            record(x);
+        }
+
+        List<Thread> journalThreads = findNewThreads(previousThreads, "SwipeEventChannel-journal");
+        assertEquals(1, journalThreads.size());
+        journalThreads.get(0).interrupt();
+        journalThreads.get(0).join(TIMEOUT_MILLIS);
+
+        assertEquals(3, mReceiver.getCount());
+        assertEquals(0, mJournalFile.length());
+        for (Thread thread : findNewThreads(previousThreads, "SwipeEventChannel")) {
+            thread.join(TIMEOUT_MILLIS);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    private static List<Thread> findNewThreads(Set<Thread> previousThreads, String name) {
+        List<Thread> threads = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name) && !previousThreads.contains(thread)) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    private void record(int index) {
+        mChannel.record(index, 100 + index, SwipeStack.SWIPE_DIRECTION_ONLY_LEFT,
+                1000 + index, 300 + index);
+    }
+
+    private static void assertEvent(SwipeEvent event, int index) {
+        assertEquals(index, event.getPosition());
+        assertEquals(100 + index, event.getItemId());
+        assertEquals(SwipeStack.SWIPE_DIRECTION_ONLY_LEFT, event.getDirection());
+        assertEquals(1000 + index, event.getTimestamp());
+        assertEquals(300 + index, event.getGestureDuration());
+    }
+
+    /**
+     * Writes the given number of records like a previous process would have,
+     * followed by the given number of bytes of a partially written record.
+     */
+    private void writeJournal(int count, int partialBytes) throws IOException {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(mJournalFile));
+        try {
+            for (int x = 0; x < count; x++) {
+                output.writeInt(x);
+                output.writeLong(100 + x);
+                output.writeInt(SwipeStack.SWIPE_DIRECTION_ONLY_LEFT);
+                output.writeLong(1000 + x);
+                output.writeLong(300 + x);
+            }
+            output.write(new byte[partialBytes]);
+        } finally {
+            output.close();
+        }
+    }
+
+    private List<SwipeEvent> readJournal() throws IOException {
+        List<SwipeEvent> events = new ArrayList<>();
+        DataInputStream input = new DataInputStream(new FileInputStream(mJournalFile));
+        try {
+            for (long x = 0; x < mJournalFile.length() / RECORD_SIZE; x++) {
+                events.add(new SwipeEvent(input.readInt(), input.readLong(),
+                        input.readInt(), input.readLong(), input.readLong()));
+            }
+        } finally {
+            input.close();
+        }
+        return events;
+    }
+
+    private void awaitJournalLength(long length) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (mJournalFile.length() != length) {
+            if (System.currentTimeMillis() > deadline) {
+                assertEquals(length, mJournalFile.length());
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Collects the delivered events, after failing the given number of batches.
+     */
+    private static class RecordingReceiver implements SwipeEventChannel.Receiver {
+
+        private final List<SwipeEvent> mEvents = new ArrayList<>();
+        private int mAttempts;
+        private int mMaxBatchSize;
+        volatile int failures;
+
+        @Override
+        public synchronized void onSwipeEvents(List<SwipeEvent> events) {
+            mAttempts++;
+            notifyAll();
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("Expected");
+            }
+
+            mEvents.addAll(events);
+            mMaxBatchSize = Math.max(mMaxBatchSize, events.size());
+            notifyAll();
+        }
+
+        synchronized SwipeEvent getEvent(int index) {
+            return mEvents.get(index);
+        }
+
+        synchronized int getCount() {
+            return mEvents.size();
+        }
+
+        synchronized int getMaxBatchSize() {
+            return mMaxBatchSize;
+        }
+
+        synchronized void awaitCount(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (mEvents.size() < count && System.currentTimeMillis() < deadline) {
+                wait(TIMEOUT_MILLIS);
+            }
+            assertEquals(count, mEvents.size());
+        }
+
+        /**
+         * Waits until at least the given number of batches has been delivered or failed.
+         */
+        synchronized void awaitAttempts(int attempts) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (mAttempts < attempts && System.currentTimeMillis() < deadline) {
+                wait(TIMEOUT_MILLIS);
+            }
+            assertTrue(mAttempts >= attempts);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.List;
+
+import link.fls.swipestack.SwipeEventChannel.SwipeEvent;
+import link.fls.swipestack.SwipeStackHarness.Gesture;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies that the touch, progress, settle and reorder cycle of a swipe
+ * doesn't allocate once the stack has warmed up.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackAllocationTest {
+
+    private static final int SWIPES = 1000;
+    private static final int WARM_UP_SWIPES = 20;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Runs with the allocation instrumenter agent only",
+                AllocationCounter.isAvailable());
+    }
+
+    @Test
+    public void gesturesDoNotAllocate() {
+        SwipeStackHarness harness = new SwipeStackHarness(SWIPES + WARM_UP_SWIPES + 2).start();
+        assertSwipesDoNotAllocate(harness, null);
+    }
+
+    /**
+     * Cards drawn by the stack are pooled and drawn every frame. The models have
+     * neither image nor caption, whose shader and layout are built once per card.
+     */
+    @Test
+    public void canvasGesturesDoNotAllocate() {
+        SwipeStackHarness harness = new SwipeStackHarness(0);
+        harness.stack.setRenderMode(SwipeStack.RENDER_MODE_CANVAS);
+        harness.stack.setAdapter(new SwipeStackRenderModeTest.CountingModelAdapter(
+                SWIPES + WARM_UP_SWIPES + 2, false));
+        harness.settle();
+        Bitmap bitmap = Bitmap.createBitmap(SwipeStackHarness.STACK_WIDTH,
+                SwipeStackHarness.STACK_HEIGHT, Bitmap.Config.ARGB_8888);
+        assertSwipesDoNotAllocate(harness, new Canvas(bitmap));
+    }
+
+    /**
+     * Replays swipes, resets, flings and programmatic swipes, recording them into
+     * a swipe event channel.
+     *
+     * @param canvas The canvas the stack is drawn into after every gesture if the
+     *               stack draws the cards itself, null if the cards are views.
+     */
+    private void assertSwipesDoNotAllocate(SwipeStackHarness harness, Canvas canvas) {
+        SwipeEventChannel channel = new SwipeEventChannel(
+                new File(mFolder.getRoot(), "swipes.journal"), new SwipeEventChannel.Receiver() {
+                    @Override
+                    public void onSwipeEvents(List<SwipeEvent> events) {
+                    }
+                });
+        harness.stack.setSwipeEventChannel(channel);
+        int width = harness.stack.getWidth();
+        Gesture[] gestures = {
+                Gesture.drag("swipe", width * 0.6f, width * 0.05f, 96),
+                Gesture.drag("reset", width * 0.1f, 0, 96),
+                Gesture.drag("fling", -width * 0.15f, 0, 32)
+        };
+
+        AllocationCounter allocations = new AllocationCounter();
+        boolean isCounting = false;
+        int swipes = 0;
+        for (int x = 0; swipes < SWIPES + WARM_UP_SWIPES; x++) {
+            if (!isCounting && swipes >= WARM_UP_SWIPES) {
+                allocations.start();
+                isCounting = true;
+            }
+
+            if (x % 4 == 3) {
+                // Programmatic swipes are queued and animated out with overlap
+                harness.stack.swipeTopViewsToLeft(2);
+                harness.settle();
+                swipes += 2;
+            } else {
+                Gesture gesture = gestures[x % 4];
+                if (canvas != null) {
+                    harness.replayOnStack(gesture);
+                } else {
+                    harness.replay(gesture);
+                }
+                if (gesture != gestures[1]) swipes++;
+            }
+            if (canvas != null) harness.stack.draw(canvas);
+        }
+        allocations.stop();
+        channel.close();
+
+        assertEquals(swipes, harness.listener.dismissedPositions.size());
+        assertEquals(allocations.getFirstAllocation(), 0, allocations.getCount());
+    }
+}
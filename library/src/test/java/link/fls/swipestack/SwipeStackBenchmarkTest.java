@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import link.fls.swipestack.SwipeStackHarness.Gesture;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Replays swipe, fling and reset gestures on stacks of different sizes and
+ * compares the layout passes, adapter calls and allocations they cause with
+ * {@value #BASELINE}. The counts are deterministic, so any increase fails the
+ * test, as does a different number of dismissals. Timings depend on the machine and are only written to the report in
+ * {@value #REPORT}.
+ * <p>
+ * Run the tests with {@code -Dswipestack.updateBaseline=true} to write the
+ * current counts to the baseline after an intended change.
+ * </p>
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackBenchmarkTest {
+
+    private static final String BASELINE = "benchmark-baseline.properties";
+    private static final String BASELINE_SOURCE =
+            "src/test/resources/link/fls/swipestack/" + BASELINE;
+    private static final String REPORT = "build/reports/swipestack/benchmark.txt";
+
+    private static final int[] SIZES = {10, 1000, 100000};
+    private static final int ROUNDS = 4;
+
+    @Test
+    public void countsStayWithinBaseline() throws IOException {
+        boolean countAllocations = AllocationCounter.isAvailable();
+        Map<String, Long> counts = new TreeMap<>();
+        List<String> report = new ArrayList<>();
+
+        for (int size : SIZES) {
+            SwipeStackHarness harness = new SwipeStackHarness(size).start();
+            int width = harness.stack.getWidth();
+            Gesture[] gestures = {
+                    Gesture.drag("reset", width * 0.1f, 0, 200),
+                    Gesture.drag("swipe", width * 0.6f, width * 0.05f, 200),
+                    Gesture.drag("fling", -width * 0.15f, 0, 32)
+            };
+
+            for (Gesture gesture : gestures) {
+                // The first gesture warms up the recycler and lazily created state
+                harness.replay(gesture);
+                measure(harness, gesture, size, countAllocations, counts, report);
+            }
+        }
+
+        writeReport(report);
+        if (Boolean.getBoolean("swipestack.updateBaseline")) {
+            writeBaseline(counts);
+            return;
+        }
+        compareWithBaseline(counts);
+    }
+
+    private static void measure(SwipeStackHarness harness, Gesture gesture, int size,
+                                boolean countAllocations, Map<String, Long> counts,
+                                List<String> report) {
+        AllocationCounter allocations = new AllocationCounter();
+        int layouts = harness.stack.layoutCount;
+        int getViews = harness.adapter.getViewCount;
+        int createViews = harness.adapter.createViewCount;
+        int dismissed = harness.listener.dismissedPositions.size();
+        long elapsedNanos = 0;
+        int replayed = 0;
+
+        for (int x = 0; x < ROUNDS; x++) {
+            if (countAllocations) allocations.start();
+            long startNanos = System.nanoTime();
+            boolean isReplayed = harness.replay(gesture);
+            elapsedNanos += System.nanoTime() - startNanos;
+            if (countAllocations) allocations.stop();
+            if (!isReplayed) break;
+            replayed++;
+        }
+
+        String key = size + "." + gesture.name + ".";
+        counts.put(key + "gestures", (long) replayed);
+        counts.put(key + "dismissals",
+                (long) harness.listener.dismissedPositions.size() - dismissed);
+        counts.put(key + "layouts", (long) harness.stack.layoutCount - layouts);
+        counts.put(key + "getView", (long) harness.adapter.getViewCount - getViews);
+        counts.put(key + "createView", (long) harness.adapter.createViewCount - createViews);
+        if (countAllocations) counts.put(key + "allocations", (long) allocations.getCount());
+
+        report.add(String.format(Locale.US,
+                "%7d %-6s gestures=%d mean=%.2fms layouts=%d getView=%d allocations=%s",
+                size, gesture.name, replayed,
+                replayed > 0 ? elapsedNanos / 1e6 / replayed : 0,
+                harness.stack.layoutCount - layouts, harness.adapter.getViewCount - getViews,
+                countAllocations ? allocations.getCount() + "" : "n/a"));
+    }
+
+    private static void compareWithBaseline(Map<String, Long> counts) throws IOException {
+        InputStream input = SwipeStackBenchmarkTest.class.getResourceAsStream(BASELINE);
+        if (input == null) fail("Missing " + BASELINE_SOURCE);
+
+        Properties baseline = new Properties();
+        try {
+            baseline.load(input);
+        } finally {
+            input.close();
+        }
+
+        StringBuilder regressions = new StringBuilder();
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            String expected = baseline.getProperty(count.getKey());
+            if (expected == null) {
+                regressions.append("\n").append(count.getKey()).append(" is not in the baseline");
+            } else if (isOutcome(count.getKey())
+                    ? count.getValue() != Long.parseLong(expected)
+                    : count.getValue() > Long.parseLong(expected)) {
+                regressions.append("\n").append(count.getKey()).append(" is ")
+                        .append(count.getValue()).append(", baseline ").append(expected);
+            }
+        }
+        assertTrue("Counts differ from the baseline, run with -Dswipestack.updateBaseline=true"
+                + " if this is intended:" + regressions, regressions.length() == 0);
+    }
+
+    /**
+     * Returns whether the count is an outcome of the gestures, which has to match
+     * the baseline exactly, rather than a cost which may also go down.
+     */
+    private static boolean isOutcome(String key) {
+        return key.endsWith(".gestures") || key.endsWith(".dismissals");
+    }
+
+    private static void writeBaseline(Map<String, Long> counts) throws IOException {
+        PrintWriter writer = open(BASELINE_SOURCE);
+        try {
+            writer.println("# Written by SwipeStackBenchmarkTest, see its documentation");
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                writer.println(count.getKey() + "=" + count.getValue());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeReport(List<String> report) throws IOException {
+        PrintWriter writer = open(REPORT);
+        try {
+            for (String line : report) {
+                writer.println(line);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static PrintWriter open(String path) throws IOException {
+        File file = new File(path);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        return new PrintWriter(new FileWriter(file));
+    }
+}
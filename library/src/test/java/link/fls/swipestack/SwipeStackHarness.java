@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Paint;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives a {@link SwipeStack} inside a Robolectric activity. The stack shows a
+ * synthetic adapter and gestures are replayed as scripted {@link MotionEvent}s
+ * through the touch listener of the top view, which is the {@link SwipeHelper}.
+ * <p>
+ * The main looper is paused, so layout passes and frame callbacks only run when
+ * the harness advances the clock. Tests run with {@link PacedShadowChoreographer},
+ * which runs frame callbacks every {@value #FRAME_MILLIS} ms of scheduler time.
+ * </p>
+ */
+class SwipeStackHarness {
+
+    static final long FRAME_MILLIS = 16;
+    static final int STACK_WIDTH = 480;
+    static final int STACK_HEIGHT = 800;
+
+    final Activity activity;
+    final CountingSwipeStack stack;
+    final SyntheticAdapter adapter;
+    final SwipeStackMetrics metrics = new SwipeStackMetrics();
+    final RecordingListener listener = new RecordingListener();
+
+    SwipeStackHarness(int itemCount) {
+        ShadowLooper.pauseMainLooper();
+        activity = Robolectric.buildActivity(Activity.class).create().start().resume().visible().get();
+        stack = new CountingSwipeStack(activity);
+        adapter = new SyntheticAdapter(itemCount);
+        stack.setMetrics(metrics);
+        stack.setListener(listener);
+        activity.setContentView(stack, new ViewGroup.LayoutParams(STACK_WIDTH, STACK_HEIGHT));
+    }
+
+    /**
+     * Sets the adapter and waits until the stack has been laid out.
+     */
+    SwipeStackHarness start() {
+        stack.setAdapter(adapter);
+        settle();
+        return this;
+    }
+
+    /**
+     * Runs everything which is due now, including the layout pass and all
+     * animation frames which follow from it.
+     */
+    void settle() {
+        for (int x = 0; x < 100 && Robolectric.getForegroundThreadScheduler().size() > 0; x++) {
+            Robolectric.getForegroundThreadScheduler().advanceToLastPostedRunnable();
+        }
+    }
+
+    /**
+     * Returns the items of the stacked views, starting with the top view.
+     */
+    List<Object> getStackedItems() {
+        List<Object> items = new ArrayList<>();
+        for (int x = stack.getChildCount() - 1; x >= 0; x--) {
+            items.add(stack.getChildAt(x).getTag());
+        }
+        return items;
+    }
+
+    /**
+     * Returns the rotations of the stacked views, starting with the top view.
+     */
+    float[] getStackedRotations() {
+        int childCount = stack.getChildCount();
+        float[] rotations = new float[childCount];
+        for (int x = 0; x < childCount; x++) {
+            rotations[x] = stack.getChildAt(childCount - 1 - x).getRotation();
+        }
+        return rotations;
+    }
+
+    /**
+     * Runs the idle handlers of the main looper until none is left, which
+     * Robolectric never does on its own.
+     */
+    void runIdleHandlers() {
+        List<MessageQueue.IdleHandler> handlers = ReflectionHelpers.getField(
+                Looper.myQueue(), "mIdleHandlers");
+        for (int x = 0; x < 100 && !handlers.isEmpty(); x++) {
+            MessageQueue.IdleHandler handler = handlers.get(0);
+            if (!handler.queueIdle()) handlers.remove(handler);
+        }
+    }
+
+    void advanceClock(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis);
+    }
+
+    /**
+     * Replays the gesture on the top view and waits until the view has been
+     * reset or dismissed.
+     *
+     * @return False if there was no top view to replay the gesture on.
+     */
+    boolean replay(Gesture gesture) {
+        View view = stack.getTopView();
+        if (view == null) return false;
+
+        // The finger starts in the center of the card, in parent coordinates
+        float originX = view.getX() + view.getWidth() / 2f;
+        float originY = view.getY() + view.getHeight() / 2f;
+        long downTime = SystemClock.uptimeMillis();
+
+        for (int x = 0; x < gesture.size(); x++) {
+            int action = x == 0 ? MotionEvent.ACTION_DOWN
+                    : x == gesture.size() - 1 ? MotionEvent.ACTION_UP : MotionEvent.ACTION_MOVE;
+            if (x > 0) advanceClock(gesture.getTime(x) - gesture.getTime(x - 1));
+
+            // Touch events are relative to the view, which moves along with the finger
+            MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action,
+                    originX + gesture.getX(x) - view.getX(),
+                    originY + gesture.getY(x) - view.getY(), 0);
+            view.dispatchTouchEvent(event);
+            event.recycle();
+        }
+
+        settle();
+        return true;
+    }
+
+    /**
+     * Replays the gesture on the stack itself, starting in its center, and waits
+     * until the card has been reset or dismissed. Used when the stack draws the
+     * cards itself and there is no top view.
+     */
+    void replayOnStack(Gesture gesture) {
+        float originX = stack.getWidth() / 2f;
+        float originY = stack.getHeight() / 2f;
+        long downTime = SystemClock.uptimeMillis();
+
+        for (int x = 0; x < gesture.size(); x++) {
+            int action = x == 0 ? MotionEvent.ACTION_DOWN
+                    : x == gesture.size() - 1 ? MotionEvent.ACTION_UP : MotionEvent.ACTION_MOVE;
+            if (x > 0) advanceClock(gesture.getTime(x) - gesture.getTime(x - 1));
+
+            MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action,
+                    originX + gesture.getX(x), originY + gesture.getY(x), 0);
+            stack.dispatchTouchEvent(event);
+            event.recycle();
+        }
+
+        settle();
+    }
+
+    /**
+     * A scripted touch gesture, as offsets of the finger from where it went down.
+     */
+    static class Gesture {
+
+        final String name;
+        private final float[] mX;
+        private final float[] mY;
+        private final long[] mTime;
+
+        private Gesture(String name, float[] x, float[] y, long[] time) {
+            this.name = name;
+            mX = x;
+            mY = y;
+            mTime = time;
+        }
+
+        /**
+         * A straight drag at constant speed with a sample every frame.
+         */
+        static Gesture drag(String name, float distanceX, float distanceY, long durationMillis) {
+            int steps = (int) Math.max(durationMillis / FRAME_MILLIS, 1);
+            float[] x = new float[steps + 1];
+            float[] y = new float[steps + 1];
+            long[] time = new long[steps + 1];
+            for (int step = 0; step <= steps; step++) {
+                x[step] = distanceX * step / steps;
+                y[step] = distanceY * step / steps;
+                time[step] = durationMillis * step / steps;
+            }
+            return new Gesture(name, x, y, time);
+        }
+
+        int size() {
+            return mTime.length;
+        }
+
+        float getX(int index) {
+            return mX[index];
+        }
+
+        float getY(int index) {
+            return mY[index];
+        }
+
+        long getTime(int index) {
+            return mTime[index];
+        }
+    }
+
+    /**
+     * Counts the layout passes of the stack.
+     */
+    static class CountingSwipeStack extends SwipeStack {
+
+        int layoutCount;
+
+        /**
+         * Collects the runnables posted for the next frame instead of posting
+         * them if set, so tests can run the frames one by one.
+         */
+        List<Runnable> heldAnimationRunnables;
+
+        CountingSwipeStack(Activity activity) {
+            super(activity);
+        }
+
+        @Override
+        public void postOnAnimation(Runnable action) {
+            if (heldAnimationRunnables == null) {
+                super.postOnAnimation(action);
+            } else if (!heldAnimationRunnables.contains(action)) {
+                heldAnimationRunnables.add(action);
+            }
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int l, int t, int r, int b) {
+            layoutCount++;
+            super.onLayout(changed, l, t, r, b);
+        }
+    }
+
+    /**
+     * An adapter of plain views which fill the stack and count how often they
+     * are bound and created. Each view is tagged with its item, the items start
+     * out as their positions and new ones count up from {@link #NEW_ITEM}.
+     */
+    static class SyntheticAdapter extends SwipeStackAdapter {
+
+        static final int NEW_ITEM = 1000;
+
+        final ArrayList<Integer> items = new ArrayList<>();
+        int getViewCount;
+        int createViewCount;
+        private int mNextItem = NEW_ITEM;
+
+        SyntheticAdapter(int count) {
+            for (int x = 0; x < count; x++) {
+                items.add(x);
+            }
+        }
+
+        void insert(int position, int count) {
+            for (int x = 0; x < count; x++) {
+                items.add(position + x, mNextItem++);
+            }
+            notifyItemRangeInserted(position, count);
+        }
+
+        void remove(int position, int count) {
+            items.subList(position, position + count).clear();
+            notifyItemRangeRemoved(position, count);
+        }
+
+        void change(int position, int count) {
+            for (int x = 0; x < count; x++) {
+                items.set(position + x, mNextItem++);
+            }
+            notifyItemRangeChanged(position, count);
+        }
+
+        @Override
+        public int getCount() {
+            return items.size();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return items.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return items.get(position);
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            getViewCount++;
+            if (convertView == null) {
+                createViewCount++;
+                convertView = new CardView(parent.getContext());
+                convertView.setLayoutParams(new ViewGroup.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT,
+                        ViewGroup.LayoutParams.MATCH_PARENT));
+            }
+            convertView.setTag(items.get(position));
+            return convertView;
+        }
+    }
+
+    /**
+     * A plain card view. Robolectric's render nodes never change their layer type,
+     * so the view keeps track of its layer type itself.
+     */
+    static class CardView extends View {
+
+        private int mLayerType = LAYER_TYPE_NONE;
+
+        CardView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setLayerType(int layerType, Paint paint) {
+            super.setLayerType(layerType, paint);
+            mLayerType = layerType;
+        }
+
+        @Override
+        public int getLayerType() {
+            return mLayerType;
+        }
+    }
+
+    /**
+     * Records the dismissed positions in the order they were reported.
+     */
+    static class RecordingListener implements SwipeStack.SwipeStackListener {
+
+        final ArrayList<Integer> dismissedPositions = new ArrayList<>();
+        int leftCount;
+        int rightCount;
+        int emptyCount;
+
+        @Override
+        public void onViewSwipedToLeft(int position) {
+            leftCount++;
+            dismissedPositions.add(position);
+        }
+
+        @Override
+        public void onViewSwipedToRight(int position) {
+            rightCount++;
+            dismissedPositions.add(position);
+        }
+
+        @Override
+        public void onStackEmpty() {
+            emptyCount++;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks what a {@link SwipeStack} releases at each trim level: spare views first,
+ * then bitmaps and layers, and the undo history only at the highest levels.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackMemoryTest {
+
+    private static final int UNDO_HISTORY_SIZE = 4;
+    private static final int PREFETCH_SIZE = 2;
+
+    private SwipeStackHarness mHarness;
+
+    @Before
+    public void setUp() {
+        mHarness = new SwipeStackHarness(20);
+        // Like app:disable_hw_acceleration="false", so the cards keep hardware layers
+        ReflectionHelpers.setField(mHarness.stack, "mDisableHwAcceleration", false);
+        mHarness.stack.setUndoHistorySize(UNDO_HISTORY_SIZE);
+        mHarness.stack.setIdlePrefetchSize(PREFETCH_SIZE);
+        mHarness.stack.setSnapshotCardsEnabled(true);
+        mHarness.start();
+
+        mHarness.stack.swipeTopViewsToLeft(UNDO_HISTORY_SIZE);
+        mHarness.settle();
+        mHarness.runIdleHandlers();
+        draw();
+    }
+
+    @Test
+    public void releasesCheapestResourcesFirst() {
+        int stacked = SwipeStack.DEFAULT_STACK_SIZE;
+        assertEquals(stacked + PREFETCH_SIZE + UNDO_HISTORY_SIZE,
+                mHarness.stack.getRetainedViewCount());
+        long footprint = mHarness.stack.getMemoryFootprint();
+        assertTrue(footprint > 0);
+
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(stacked + UNDO_HISTORY_SIZE, mHarness.stack.getRetainedViewCount());
+        assertTrue(mHarness.stack.getMemoryFootprint() <= footprint);
+
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(stacked + UNDO_HISTORY_SIZE, mHarness.stack.getRetainedViewCount());
+        assertTrue(mHarness.stack.getMemoryFootprint() <= footprint);
+
+        // Layers and snapshots are gone, the undo history is kept
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(0, mHarness.stack.getMemoryFootprint());
+        assertEquals(stacked + UNDO_HISTORY_SIZE, mHarness.stack.getRetainedViewCount());
+        assertEquals(UNDO_HISTORY_SIZE, mHarness.stack.getUndoCount());
+
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(UNDO_HISTORY_SIZE / 2, mHarness.stack.getUndoCount());
+        assertEquals(stacked + UNDO_HISTORY_SIZE / 2, mHarness.stack.getRetainedViewCount());
+
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, mHarness.stack.getUndoCount());
+        assertEquals(stacked, mHarness.stack.getRetainedViewCount());
+        assertEquals(0, mHarness.stack.getMemoryFootprint());
+    }
+
+    @Test
+    public void runningCriticalKeepsHalfOfUndoHistory() {
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        assertEquals(0, mHarness.stack.getMemoryFootprint());
+        assertEquals(UNDO_HISTORY_SIZE / 2, mHarness.stack.getUndoCount());
+    }
+
+    @Test
+    public void countsOnlyHardwareLayers() {
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        View topView = mHarness.stack.getTopView();
+
+        topView.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+        assertEquals(0, mHarness.stack.getMemoryFootprint());
+
+        topView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        assertEquals(4L * topView.getWidth() * topView.getHeight(),
+                mHarness.stack.getMemoryFootprint());
+    }
+
+    private void trimMemory(int level) {
+        mHarness.activity.getApplication().onTrimMemory(level);
+    }
+
+    private void draw() {
+        Bitmap bitmap = Bitmap.createBitmap(SwipeStackHarness.STACK_WIDTH,
+                SwipeStackHarness.STACK_HEIGHT, Bitmap.Config.ARGB_8888);
+        mHarness.stack.draw(new Canvas(bitmap));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import org.junit.Test;
+
+import link.fls.swipestack.SwipeStackMetrics.Histogram;
+
+import static org.junit.Assert.assertEquals;
+
+public class SwipeStackMetricsTest {
+
+    private static final long[] BOUNDS = {1, 2, 4, 8};
+
+    @Test
+    public void recordsIntoInclusiveBuckets() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(8);
+        histogram.record(9);
+
+        assertEquals(5, histogram.getBucketCount());
+        assertEquals(2, histogram.getBucketValueCount(0));
+        assertEquals(1, histogram.getBucketValueCount(1));
+        assertEquals(1, histogram.getBucketValueCount(2));
+        assertEquals(1, histogram.getBucketValueCount(3));
+        assertEquals(1, histogram.getBucketValueCount(4));
+        assertEquals(8, histogram.getBucketUpperBound(3));
+        assertEquals(Long.MAX_VALUE, histogram.getBucketUpperBound(4));
+    }
+
+    @Test
+    public void tracksCountMeanAndMax() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(1);
+        histogram.record(4);
+        histogram.record(7);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(4, histogram.getMean(), 0.001);
+        assertEquals(7, histogram.getMax());
+    }
+
+    @Test
+    public void percentileIsUpperBoundOfBucket() {
+        Histogram histogram = new Histogram(BOUNDS);
+        for (int x = 0; x < 90; x++) histogram.record(1);
+        for (int x = 0; x < 9; x++) histogram.record(3);
+        histogram.record(6);
+
+        assertEquals(1, histogram.getPercentile(50));
+        assertEquals(1, histogram.getPercentile(90));
+        assertEquals(4, histogram.getPercentile(91));
+        assertEquals(4, histogram.getPercentile(99));
+        assertEquals(8, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentileInOverflowBucketIsMax() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(1);
+        histogram.record(50);
+        histogram.record(20);
+
+        assertEquals(1, histogram.getPercentile(33));
+        assertEquals(50, histogram.getPercentile(90));
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        Histogram histogram = new Histogram(BOUNDS);
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        Histogram histogram = new Histogram(BOUNDS);
+        histogram.record(3);
+        histogram.record(100);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+        for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+            assertEquals(0, histogram.getBucketValueCount(bucket));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that range notifications of a {@link SwipeStackAdapter} only rebind the
+ * affected cards, for ranges behind, inside and beyond the visible stack.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackRangeTest {
+
+    private static final int NEW_ITEM = SwipeStackHarness.SyntheticAdapter.NEW_ITEM;
+
+    @Test
+    public void changeInsideStackRebindsOnlyChangedCard() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        View topView = harness.stack.getTopView();
+        int getViewCount = harness.adapter.getViewCount;
+        int layoutCount = harness.stack.layoutCount;
+
+        harness.adapter.change(1, 1);
+        harness.settle();
+
+        assertEquals(Arrays.<Object>asList(0, NEW_ITEM, 2), harness.getStackedItems());
+        assertEquals(getViewCount + 1, harness.adapter.getViewCount);
+        assertSame(topView, harness.stack.getTopView());
+        assertEquals(layoutCount, harness.stack.layoutCount);
+    }
+
+    @Test
+    public void changeOutsideStackRebindsNothing() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        harness.stack.swipeTopViewsToLeft(2);
+        harness.settle();
+        int getViewCount = harness.adapter.getViewCount;
+
+        harness.adapter.change(0, 1);
+        harness.adapter.change(6, 2);
+        harness.settle();
+
+        assertEquals(Arrays.<Object>asList(2, 3, 4), harness.getStackedItems());
+        assertEquals(getViewCount, harness.adapter.getViewCount);
+        assertEquals(2, harness.stack.getCurrentPosition());
+    }
+
+    @Test
+    public void insertInsideStackRebindsCardsFromStart() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        View topView = harness.stack.getTopView();
+        int getViewCount = harness.adapter.getViewCount;
+        int createViewCount = harness.adapter.createViewCount;
+
+        harness.adapter.insert(1, 1);
+        harness.settle();
+
+        assertEquals(Arrays.<Object>asList(0, NEW_ITEM, 1), harness.getStackedItems());
+        assertEquals(getViewCount + 2, harness.adapter.getViewCount);
+        assertEquals(createViewCount, harness.adapter.createViewCount);
+        assertSame(topView, harness.stack.getTopView());
+        assertEquals(0, harness.stack.getCurrentPosition());
+    }
+
+    @Test
+    public void insertBehindStackShiftsPositions() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        harness.stack.swipeTopViewsToLeft(2);
+        harness.settle();
+        int getViewCount = harness.adapter.getViewCount;
+
+        harness.adapter.insert(0, 1);
+        harness.settle();
+
+        assertEquals(Arrays.<Object>asList(2, 3, 4), harness.getStackedItems());
+        assertEquals(getViewCount, harness.adapter.getViewCount);
+        assertEquals(3, harness.stack.getCurrentPosition());
+
+        harness.stack.swipeTopViewToLeft();
+        harness.settle();
+        assertEquals(Arrays.asList(0, 1, 3), harness.listener.dismissedPositions);
+    }
+
+    @Test
+    public void insertBeyondStackRebindsNothing() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        int getViewCount = harness.adapter.getViewCount;
+
+        harness.adapter.insert(5, 2);
+        harness.settle();
+
+        assertEquals(Arrays.<Object>asList(0, 1, 2), harness.getStackedItems());
+        assertEquals(getViewCount, harness.adapter.getViewCount);
+    }
+
+    @Test
+    public void removeInsideStackRebindsCardsFromStart() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        View topView = harness.stack.getTopView();
+        int createViewCount = harness.adapter.createViewCount;
+
+        harness.adapter.remove(1, 1);
+        harness.settle();
+
+        assertEquals(Arrays.<Object>asList(0, 2, 3), harness.getStackedItems());
+        assertEquals(createViewCount, harness.adapter.createViewCount);
+        assertSame(topView, harness.stack.getTopView());
+    }
+
+    @Test
+    public void removeReachingBehindTopViewMovesBackToStart() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        harness.stack.swipeTopViewsToLeft(2);
+        harness.settle();
+
+        harness.adapter.remove(1, 2);
+        harness.settle();
+
+        assertEquals(1, harness.stack.getCurrentPosition());
+        assertEquals(Arrays.<Object>asList(3, 4, 5), harness.getStackedItems());
+    }
+
+    @Test
+    public void removeBehindStackShiftsPositions() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        harness.stack.swipeTopViewsToLeft(2);
+        harness.settle();
+        int getViewCount = harness.adapter.getViewCount;
+
+        harness.adapter.remove(0, 1);
+        harness.settle();
+
+        assertEquals(1, harness.stack.getCurrentPosition());
+        assertEquals(Arrays.<Object>asList(2, 3, 4), harness.getStackedItems());
+        assertEquals(getViewCount, harness.adapter.getViewCount);
+    }
+
+    @Test
+    public void removeBelowStackSizeDropsBottomCards() {
+        SwipeStackHarness harness = new SwipeStackHarness(3).start();
+
+        harness.adapter.remove(1, 2);
+        harness.settle();
+
+        assertEquals(Arrays.<Object>asList(0), harness.getStackedItems());
+        assertEquals(0, harness.listener.emptyCount);
+
+        harness.stack.swipeTopViewToLeft();
+        harness.settle();
+        assertEquals(1, harness.listener.emptyCount);
+    }
+
+    @Test
+    public void dismissingCardsReportShiftedPositions() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        harness.stack.swipeTopViewsToLeft(2);
+
+        // Both cards are still animating out
+        harness.adapter.insert(0, 3);
+        harness.adapter.remove(0, 1);
+        harness.settle();
+
+        assertEquals(Arrays.asList(2, 3), harness.listener.dismissedPositions);
+    }
+}
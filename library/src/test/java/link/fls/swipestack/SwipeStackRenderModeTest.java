@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.annotation.Nullable;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import link.fls.swipestack.SwipeStackHarness.Gesture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackRenderModeTest {
+
+    @Test
+    public void canvasModeAddsNoViews() {
+        SwipeStackHarness harness = startCanvasMode(10000);
+
+        assertEquals(0, harness.stack.getChildCount());
+        assertNull(harness.stack.getTopView());
+        assertEquals(0, harness.stack.getCurrentPosition());
+        assertEquals(0, ((CountingModelAdapter) harness.stack.getAdapter()).getViewCount);
+
+        // Draws the models of the stacked cards
+        Bitmap bitmap = Bitmap.createBitmap(SwipeStackHarness.STACK_WIDTH,
+                SwipeStackHarness.STACK_HEIGHT, Bitmap.Config.ARGB_8888);
+        harness.stack.draw(new Canvas(bitmap));
+    }
+
+    @Test
+    public void swipeOnCanvasCardDismissesIt() {
+        SwipeStackHarness harness = startCanvasMode(10);
+        int width = harness.stack.getWidth();
+
+        harness.replayOnStack(Gesture.drag("swipe", width * 0.6f, 0, 200));
+        harness.replayOnStack(Gesture.drag("swipe", -width * 0.6f, 0, 200));
+
+        assertEquals(Arrays.asList(0, 1), harness.listener.dismissedPositions);
+        assertEquals(1, harness.listener.rightCount);
+        assertEquals(1, harness.listener.leftCount);
+        assertEquals(2, harness.stack.getCurrentPosition());
+        assertEquals(0, harness.stack.getChildCount());
+    }
+
+    @Test
+    public void shortDragResetsCanvasCard() {
+        SwipeStackHarness harness = startCanvasMode(10);
+
+        harness.replayOnStack(Gesture.drag("reset", harness.stack.getWidth() * 0.1f, 20, 200));
+
+        assertTrue(harness.listener.dismissedPositions.isEmpty());
+        assertEquals(0, harness.stack.getCurrentPosition());
+    }
+
+    @Test
+    public void touchOutsideTopCardIsIgnored() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        // The cards only cover the top quarter of the stack
+        harness.stack.setPadding(0, 0, 0, SwipeStackHarness.STACK_HEIGHT * 3 / 4);
+        harness.stack.setRenderMode(SwipeStack.RENDER_MODE_CANVAS);
+        harness.stack.setAdapter(new CountingModelAdapter(10));
+        harness.settle();
+
+        harness.replayOnStack(Gesture.drag("swipe", harness.stack.getWidth() * 0.6f, 0, 200));
+
+        assertTrue(harness.listener.dismissedPositions.isEmpty());
+    }
+
+    @Test
+    public void programmaticSwipesRunThroughCanvasCards() {
+        SwipeStackHarness harness = startCanvasMode(5);
+
+        harness.stack.swipeTopViewsToLeft(5);
+        harness.settle();
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), harness.listener.dismissedPositions);
+        assertEquals(1, harness.listener.emptyCount);
+        assertEquals(5, harness.stack.getCurrentPosition());
+    }
+
+    @Test
+    public void switchingRenderModeKeepsPosition() {
+        SwipeStackHarness harness = startCanvasMode(10);
+        harness.replayOnStack(Gesture.drag("swipe", harness.stack.getWidth() * 0.6f, 0, 200));
+
+        harness.stack.setRenderMode(SwipeStack.RENDER_MODE_VIEWS);
+        harness.settle();
+
+        assertEquals(1, harness.stack.getCurrentPosition());
+        assertEquals(SwipeStack.DEFAULT_STACK_SIZE, harness.stack.getChildCount());
+        assertNotNull(harness.stack.getTopView());
+
+        harness.replay(Gesture.drag("swipe", harness.stack.getWidth() * 0.6f, 0, 200));
+        harness.stack.setRenderMode(SwipeStack.RENDER_MODE_CANVAS);
+        harness.settle();
+
+        assertEquals(Arrays.asList(0, 1), harness.listener.dismissedPositions);
+        assertEquals(2, harness.stack.getCurrentPosition());
+        assertEquals(0, harness.stack.getChildCount());
+        assertNull(harness.stack.getTopView());
+    }
+
+    @Test
+    public void replacingAdapterKeepsPosition() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        harness.replay(Gesture.drag("swipe", harness.stack.getWidth() * 0.6f, 0, 200));
+
+        harness.stack.setRenderMode(SwipeStack.RENDER_MODE_CANVAS);
+        assertEquals(SwipeStack.DEFAULT_STACK_SIZE, harness.stack.getChildCount());
+
+        harness.stack.setAdapter(new CountingModelAdapter(10));
+        harness.settle();
+
+        assertEquals(1, harness.stack.getCurrentPosition());
+        assertEquals(0, harness.stack.getChildCount());
+    }
+
+    private static SwipeStackHarness startCanvasMode(int itemCount) {
+        SwipeStackHarness harness = new SwipeStackHarness(itemCount);
+        harness.stack.setRenderMode(SwipeStack.RENDER_MODE_CANVAS);
+        harness.stack.setAdapter(new CountingModelAdapter(itemCount));
+        harness.settle();
+        return harness;
+    }
+
+    /**
+     * Card models without an image, in an adapter which counts how often it
+     * is asked for a view.
+     */
+    static class CountingModelAdapter extends CardModelAdapter<CountingModelAdapter.Item> {
+
+        int getViewCount;
+
+        CountingModelAdapter(int count) {
+            this(count, true);
+        }
+
+        CountingModelAdapter(int count, boolean hasCaptions) {
+            super(createItems(count, hasCaptions));
+        }
+
+        private static List<Item> createItems(int count, boolean hasCaptions) {
+            List<Item> items = new ArrayList<>(count);
+            for (int x = 0; x < count; x++) {
+                items.add(new Item(hasCaptions ? "Card " + x : null));
+            }
+            return items;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            getViewCount++;
+            return super.getView(position, convertView, parent);
+        }
+
+        static class Item implements CardModel {
+
+            private final CharSequence mCaption;
+
+            Item(CharSequence caption) {
+                mCaption = caption;
+            }
+
+            @Nullable
+            @Override
+            public Bitmap getImage() {
+                return null;
+            }
+
+            @Nullable
+            @Override
+            public CharSequence getCaption() {
+                return mCaption;
+            }
+        }
+    }
+}
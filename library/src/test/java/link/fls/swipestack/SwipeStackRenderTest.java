@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Parcelable;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how the first render is spread over frames and how the stack shadow
+ * mode replaces the shadows of the cards below the top view.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackRenderTest {
+
+    private static final float ELEVATION = 8f;
+
+    /**
+     * Lays out the stack and runs the frames it posts one by one, returning the
+     * number of views on the stack after the layout and after each frame.
+     */
+    private static List<Integer> recordFirstRender(SwipeStackHarness harness) {
+        List<Runnable> frames = new ArrayList<>();
+        harness.stack.heldAnimationRunnables = frames;
+        harness.start();
+
+        List<Integer> childCounts = new ArrayList<>();
+        childCounts.add(harness.stack.getChildCount());
+        while (!frames.isEmpty()) {
+            frames.remove(0).run();
+            harness.settle();
+            childCounts.add(harness.stack.getChildCount());
+        }
+        return childCounts;
+    }
+
+    @Test
+    public void stagedFirstRenderAddsOneViewPerFrame() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setStagedFirstRenderEnabled(true);
+
+        assertEquals(Arrays.asList(1, 2, 3), recordFirstRender(harness));
+        assertEquals(Arrays.<Object>asList(0, 1, 2), harness.getStackedItems());
+    }
+
+    @Test
+    public void firstRenderAddsAllViewsAtOnce() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+
+        assertEquals(Arrays.asList(3), recordFirstRender(harness));
+    }
+
+    @Test
+    public void stagedFirstRenderKeepsRestoredRotations() {
+        SwipeStackHarness first = new SwipeStackHarness(10).start();
+        first.stack.swipeTopViewToLeft();
+        first.settle();
+        float[] rotations = first.getStackedRotations();
+        Parcelable state = first.stack.onSaveInstanceState();
+
+        SwipeStackHarness second = new SwipeStackHarness(10);
+        second.stack.setStagedFirstRenderEnabled(true);
+        second.stack.setAdapter(second.adapter);
+        second.stack.onRestoreInstanceState(state);
+        second.settle();
+
+        assertEquals(Arrays.<Object>asList(1, 2, 3), second.getStackedItems());
+        assertArrayEquals(rotations, second.getStackedRotations(), 0.01f);
+    }
+
+    @Test
+    public void stackShadowModeDrawsOneShadowBelowTopView() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setShadowMode(SwipeStack.SHADOW_MODE_STACK);
+        harness.start();
+        setElevation(harness);
+
+        // The cards below the top view rest at Z 0 without shadows of their own
+        assertEquals(-ELEVATION, harness.stack.getChildAt(0).getTranslationZ(), 0.01f);
+        assertEquals(-ELEVATION, harness.stack.getChildAt(1).getTranslationZ(), 0.01f);
+        assertEquals(2f, harness.stack.getChildAt(2).getTranslationZ(), 0.01f);
+
+        // The nine patch of the shadow
+        assertEquals(9, draw(harness));
+        StackShadowRenderer shadowRenderer =
+                ReflectionHelpers.getField(harness.stack, "mShadowRenderer");
+        assertTrue(shadowRenderer.getByteCount() > 0);
+    }
+
+    @Test
+    public void perCardShadowModeKeepsShadows() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        setElevation(harness);
+
+        for (int x = 0; x < harness.stack.getChildCount(); x++) {
+            assertEquals(x, harness.stack.getChildAt(x).getTranslationZ(), 0.01f);
+        }
+
+        assertEquals(0, draw(harness));
+        StackShadowRenderer shadowRenderer =
+                ReflectionHelpers.getField(harness.stack, "mShadowRenderer");
+        assertEquals(0, shadowRenderer.getByteCount());
+    }
+
+    private static void setElevation(SwipeStackHarness harness) {
+        for (int x = 0; x < harness.stack.getChildCount(); x++) {
+            View child = harness.stack.getChildAt(x);
+            child.setElevation(ELEVATION);
+        }
+        harness.stack.requestLayout();
+        harness.settle();
+    }
+
+    /**
+     * Draws the stack and returns the number of bitmap pieces drawn, which only
+     * the stack shadow draws.
+     */
+    private static int draw(SwipeStackHarness harness) {
+        Bitmap bitmap = Bitmap.createBitmap(SwipeStackHarness.STACK_WIDTH,
+                SwipeStackHarness.STACK_HEIGHT, Bitmap.Config.ARGB_8888);
+        final int[] bitmapDraws = new int[1];
+        Canvas canvas = new Canvas(bitmap) {
+            @Override
+            public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+                // Robolectric can't draw parts of a bitmap
+                bitmapDraws[0]++;
+            }
+        };
+
+        // Robolectric's View.draw() only calls onDraw(), so the children are drawn directly
+        harness.stack.dispatchDraw(canvas);
+        bitmap.recycle();
+        return bitmapDraws[0];
+    }
+}
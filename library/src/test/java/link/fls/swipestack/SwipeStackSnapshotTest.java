@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that cards below the top view are drawn from snapshots which are
+ * reused until they are marked dirty, and that the top view is drawn live.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackSnapshotTest {
+
+    private static void draw(SwipeStackHarness harness) {
+        Bitmap bitmap = Bitmap.createBitmap(SwipeStackHarness.STACK_WIDTH,
+                SwipeStackHarness.STACK_HEIGHT, Bitmap.Config.ARGB_8888);
+        // Robolectric's View.draw() only calls onDraw(), so the children are drawn directly
+        harness.stack.dispatchDraw(new Canvas(bitmap));
+        bitmap.recycle();
+    }
+
+    private static CardState getCard(SwipeStackHarness harness, int index) {
+        return CardState.get(harness.stack.getChildAt(index));
+    }
+
+    @Test
+    public void cardsBelowTopViewAreDrawnFromSnapshots() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setSnapshotCardsEnabled(true);
+        harness.start();
+
+        draw(harness);
+
+        assertNotNull(getCard(harness, 0).snapshot);
+        assertNotNull(getCard(harness, 1).snapshot);
+        assertNull(getCard(harness, 2).snapshot);
+
+        // Drawing again reuses the snapshot as it is
+        Bitmap snapshot = getCard(harness, 0).snapshot;
+        draw(harness);
+        assertSame(snapshot, getCard(harness, 0).snapshot);
+        assertFalse(getCard(harness, 0).isSnapshotDirty);
+    }
+
+    @Test
+    public void invalidatedSnapshotsAreCapturedAgain() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setSnapshotCardsEnabled(true);
+        harness.start();
+        draw(harness);
+
+        harness.stack.invalidateCardSnapshots();
+        assertTrue(getCard(harness, 0).isSnapshotDirty);
+
+        draw(harness);
+        assertFalse(getCard(harness, 0).isSnapshotDirty);
+    }
+
+    @Test
+    public void newTopViewReleasesItsSnapshot() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setSnapshotCardsEnabled(true);
+        harness.start();
+        draw(harness);
+
+        harness.stack.swipeTopViewToLeft();
+        harness.settle();
+
+        assertNull(CardState.get(harness.stack.getTopView()).snapshot);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.os.Parcelable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Saves the state of a stack and restores it into a new one, like after a
+ * configuration change, with and without a staged first render.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackStateTest {
+
+    @Test
+    public void restoresPositionAndRotations() {
+        SwipeStackHarness first = new SwipeStackHarness(10).start();
+        first.stack.swipeTopViewsToRight(2);
+        first.settle();
+        float[] rotations = first.getStackedRotations();
+        Parcelable state = first.stack.onSaveInstanceState();
+
+        SwipeStackHarness second = new SwipeStackHarness(10);
+        // Like an activity, the adapter is set before the state is restored
+        second.stack.setAdapter(second.adapter);
+        second.stack.onRestoreInstanceState(state);
+        second.settle();
+
+        assertEquals(2, second.stack.getCurrentPosition());
+        assertEquals(Arrays.<Object>asList(2, 3, 4), second.getStackedItems());
+        assertArrayEquals(rotations, second.getStackedRotations(), 0.01f);
+        assertTrue(second.listener.dismissedPositions.isEmpty());
+    }
+
+    @Test
+    public void restoredUndoHistoryBringsBackDismissedItems() {
+        SwipeStackHarness first = new SwipeStackHarness(10);
+        first.stack.setUndoHistorySize(2);
+        first.start();
+        first.stack.swipeTopViewsToLeft(3);
+        first.settle();
+        Parcelable state = first.stack.onSaveInstanceState();
+
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setUndoHistorySize(2);
+        // Like an activity, the adapter is set before the state is restored
+        harness.stack.setAdapter(harness.adapter);
+        harness.stack.onRestoreInstanceState(state);
+        harness.settle();
+        assertEquals(2, harness.stack.getUndoCount());
+
+        // The views are bound again from the adapter at the saved positions
+        assertTrue(harness.stack.undoLastSwipe());
+        harness.settle();
+        assertTrue(harness.stack.undoLastSwipe());
+        harness.settle();
+
+        assertEquals(1, harness.stack.getCurrentPosition());
+        assertEquals(Arrays.<Object>asList(1, 2, 3), harness.getStackedItems());
+        assertEquals(0, harness.stack.getUndoCount());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.Arrays;
+
+import link.fls.swipestack.SwipeStackHarness.Gesture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackTest {
+
+    @Test
+    public void fillsStackOnFirstLayout() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+
+        assertNotNull(harness.stack.getTopView());
+        assertEquals(SwipeStack.DEFAULT_STACK_SIZE, harness.stack.getChildCount());
+        assertEquals(0, harness.stack.getCurrentPosition());
+    }
+
+    @Test
+    public void swipeToRightDismissesTopView() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        int width = harness.stack.getWidth();
+
+        harness.replay(Gesture.drag("swipe", width * 0.6f, 0, 200));
+
+        assertEquals(Arrays.asList(0), harness.listener.dismissedPositions);
+        assertEquals(1, harness.listener.rightCount);
+        assertEquals(1, harness.stack.getCurrentPosition());
+    }
+
+    @Test
+    public void shortDragResetsTopView() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        View topView = harness.stack.getTopView();
+        float x = topView.getX();
+
+        harness.replay(Gesture.drag("reset", harness.stack.getWidth() * 0.1f, 20, 200));
+
+        assertSame(topView, harness.stack.getTopView());
+        assertEquals(x, topView.getX(), 0.01f);
+        assertEquals(1f, topView.getAlpha(), 0.01f);
+        assertTrue(harness.listener.dismissedPositions.isEmpty());
+    }
+
+    @Test
+    public void swipesUntilStackIsEmpty() {
+        SwipeStackHarness harness = new SwipeStackHarness(5).start();
+        int width = harness.stack.getWidth();
+
+        for (int x = 0; x < 5; x++) {
+            float distance = x % 2 == 0 ? width * 0.6f : -width * 0.6f;
+            harness.replay(Gesture.drag("swipe", distance, 0, 200));
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), harness.listener.dismissedPositions);
+        assertEquals(3, harness.listener.rightCount);
+        assertEquals(2, harness.listener.leftCount);
+        assertEquals(1, harness.listener.emptyCount);
+        assertEquals(0, harness.stack.getChildCount());
+        assertNull(harness.stack.getTopView());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedCallbacksRemoveTopViewSynchronously() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        View topView = harness.stack.getTopView();
+
+        harness.stack.onViewSwipedToLeft();
+
+        // Notified and removed before returning, without waiting for a frame
+        assertEquals(Arrays.asList(0), harness.listener.dismissedPositions);
+        assertEquals(1, harness.listener.leftCount);
+        assertEquals(1, harness.stack.getCurrentPosition());
+        assertEquals(-1, harness.stack.indexOfChild(topView));
+
+        harness.stack.swipeTopViewToRight();
+        harness.stack.onViewSwipedToRight();
+
+        // The animated dismissal in flight is reported first
+        assertEquals(Arrays.asList(0, 1, 2), harness.listener.dismissedPositions);
+        assertEquals(3, harness.stack.getCurrentPosition());
+    }
+
+    @Test
+    public void idlePrefetchedViewsAreUsedWithoutRebinding() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setIdlePrefetchSize(2);
+        harness.start();
+        harness.runIdleHandlers();
+
+        // The stacked views plus the two prefetched ones
+        assertEquals(SwipeStack.DEFAULT_STACK_SIZE + 2, harness.adapter.getViewCount);
+
+        harness.stack.swipeTopViewsToLeft(2);
+        harness.settle();
+
+        assertEquals(SwipeStack.DEFAULT_STACK_SIZE + 2, harness.adapter.getViewCount);
+        assertEquals(Arrays.<Object>asList(2, 3, 4), harness.getStackedItems());
+    }
+
+    @Test
+    public void detachPausesDismissalsUntilReattached() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        ViewGroup parent = (ViewGroup) harness.stack.getParent();
+        harness.stack.swipeTopViewToLeft();
+        harness.advanceClock(SwipeStackHarness.FRAME_MILLIS * 2);
+
+        parent.removeView(harness.stack);
+        harness.settle();
+
+        // Nothing is reported while detached
+        assertTrue(harness.listener.dismissedPositions.isEmpty());
+        assertEquals(1, harness.stack.getCurrentPosition());
+
+        parent.addView(harness.stack, new ViewGroup.LayoutParams(
+                SwipeStackHarness.STACK_WIDTH, SwipeStackHarness.STACK_HEIGHT));
+        harness.settle();
+
+        assertEquals(Arrays.asList(0), harness.listener.dismissedPositions);
+        assertEquals(SwipeStack.DEFAULT_STACK_SIZE, harness.stack.getChildCount());
+    }
+
+    @Test
+    public void detachRecyclesVelocityTracker() {
+        SwipeStackHarness harness = new SwipeStackHarness(10).start();
+        ViewGroup parent = (ViewGroup) harness.stack.getParent();
+        SwipeHelper swipeHelper = ReflectionHelpers.getField(harness.stack, "mSwipeHelper");
+        harness.replay(Gesture.drag("swipe", harness.stack.getWidth() * 0.6f, 0, 200));
+        assertNotNull(ReflectionHelpers.getField(swipeHelper, "mVelocityTracker"));
+
+        parent.removeView(harness.stack);
+        assertNull(ReflectionHelpers.getField(swipeHelper, "mVelocityTracker"));
+
+        // The next gesture obtains a new one
+        parent.addView(harness.stack, new ViewGroup.LayoutParams(
+                SwipeStackHarness.STACK_WIDTH, SwipeStackHarness.STACK_HEIGHT));
+        harness.settle();
+        harness.replay(Gesture.drag("swipe", harness.stack.getWidth() * 0.6f, 0, 200));
+        assertEquals(Arrays.asList(0, 1), harness.listener.dismissedPositions);
+    }
+
+    @Test
+    public void countsRecycleHitsPerStackInSharedScope() {
+        SwipeStackScope scope = new SwipeStackScope(1024 * 1024);
+        try {
+            SwipeStackHarness first = new SwipeStackHarness(10);
+            SwipeStackHarness second = new SwipeStackHarness(10);
+            first.stack.setScope(scope);
+            second.stack.setScope(scope);
+            first.start();
+            second.start();
+            int secondHits = second.stack.getRecycleHitCount();
+            int secondMisses = second.stack.getRecycleMissCount();
+
+            // Each dismissed view is recycled before the next swipe needs one
+            for (int x = 0; x < 3; x++) {
+                first.stack.swipeTopViewToLeft();
+                first.settle();
+            }
+
+            assertTrue(first.stack.getRecycleHitCount() > 0);
+            assertEquals(secondHits, second.stack.getRecycleHitCount());
+            assertEquals(secondMisses, second.stack.getRecycleMissCount());
+        } finally {
+            scope.shutdown();
+        }
+    }
+}
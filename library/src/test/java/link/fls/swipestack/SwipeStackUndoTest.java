@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link SwipeStack#undoLastSwipe()} brings back the dismissed views
+ * themselves and drops the history once it can't follow the data anymore.
+ */
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SwipeStackUndoTest {
+
+    @Test
+    public void undoBringsBackDismissedViewWithoutRebinding() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setUndoHistorySize(2);
+        harness.start();
+        View topView = harness.stack.getTopView();
+        harness.stack.swipeTopViewToLeft();
+        harness.settle();
+        int getViewCount = harness.adapter.getViewCount;
+
+        assertTrue(harness.stack.undoLastSwipe());
+        harness.settle();
+
+        assertSame(topView, harness.stack.getTopView());
+        assertEquals(1f, topView.getAlpha(), 0.01f);
+        assertEquals(0, harness.stack.getCurrentPosition());
+        assertEquals(0, harness.stack.getUndoCount());
+        assertEquals(Arrays.<Object>asList(0, 1, 2), harness.getStackedItems());
+        assertEquals(getViewCount, harness.adapter.getViewCount);
+    }
+
+    @Test
+    public void historyKeepsOnlyNewestViews() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setUndoHistorySize(2);
+        harness.start();
+
+        harness.stack.swipeTopViewsToLeft(3);
+        harness.settle();
+        assertEquals(2, harness.stack.getUndoCount());
+
+        assertTrue(harness.stack.undoLastSwipe());
+        harness.settle();
+        assertTrue(harness.stack.undoLastSwipe());
+        harness.settle();
+
+        assertFalse(harness.stack.undoLastSwipe());
+        assertEquals(1, harness.stack.getCurrentPosition());
+        assertEquals(Arrays.<Object>asList(1, 2, 3), harness.getStackedItems());
+    }
+
+    @Test
+    public void insertBehindStackDropsHistory() {
+        SwipeStackHarness harness = new SwipeStackHarness(10);
+        harness.stack.setUndoHistorySize(2);
+        harness.start();
+        harness.stack.swipeTopViewToLeft();
+        harness.settle();
+
+        harness.adapter.insert(0, 1);
+        harness.settle();
+
+        assertEquals(0, harness.stack.getUndoCount());
+        assertFalse(harness.stack.undoLastSwipe());
+        assertEquals(2, harness.stack.getCurrentPosition());
+    }
+}
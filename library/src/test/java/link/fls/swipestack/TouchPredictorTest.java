@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TouchPredictorTest {
+
+    private static final float DELTA = 0.001f;
+
+    private TouchPredictor mPredictor;
+    private final float[] mPrediction = new float[2];
+
+    @Before
+    public void setUp() {
+        mPredictor = new TouchPredictor(100);
+    }
+
+    @Test
+    public void extrapolatesSteadyMovement() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(10, 5, 10);
+        mPredictor.addSample(20, 10, 20);
+
+        mPredictor.predict(30, mPrediction);
+
+        assertEquals(30, mPrediction[0], DELTA);
+        assertEquals(15, mPrediction[1], DELTA);
+    }
+
+    @Test
+    public void returnsLastSampleWithTooFewSamples() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(10, 0, 10);
+
+        mPredictor.predict(20, mPrediction);
+
+        assertEquals(10, mPrediction[0], DELTA);
+        assertEquals(0, mPrediction[1], DELTA);
+    }
+
+    @Test
+    public void limitsPredictionTime() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(10, 0, 10);
+        mPredictor.addSample(20, 0, 20);
+
+        mPredictor.predict(200, mPrediction);
+
+        // At most 20 ms ahead of the last sample
+        assertEquals(40, mPrediction[0], DELTA);
+    }
+
+    @Test
+    public void limitsPredictionDistance() {
+        mPredictor = new TouchPredictor(5);
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(0, 10, 10);
+        mPredictor.addSample(0, 20, 20);
+
+        mPredictor.predict(30, mPrediction);
+
+        assertEquals(0, mPrediction[0], DELTA);
+        assertEquals(25, mPrediction[1], DELTA);
+    }
+
+    @Test
+    public void doesNotPredictWhenDirectionChanges() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(20, 0, 10);
+        mPredictor.addSample(10, 0, 20);
+
+        mPredictor.predict(30, mPrediction);
+
+        assertEquals(10, mPrediction[0], DELTA);
+    }
+
+    @Test
+    public void doesNotPredictFromOldSamples() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(30, 0, 30);
+        mPredictor.addSample(60, 0, 60);
+
+        mPredictor.predict(70, mPrediction);
+
+        assertEquals(60, mPrediction[0], DELTA);
+    }
+
+    @Test
+    public void usesOnlyTheMostRecentSamples() {
+        // The early samples would turn the movement around
+        mPredictor.addSample(100, 0, 0);
+        mPredictor.addSample(0, 0, 10);
+        for (int x = 1; x <= 4; x++) {
+            mPredictor.addSample(x * 10, 0, 10 + x * 10);
+        }
+
+        mPredictor.predict(60, mPrediction);
+
+        assertEquals(50, mPrediction[0], DELTA);
+    }
+
+    @Test
+    public void measuresErrorOfLastPrediction() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(10, 0, 10);
+        mPredictor.addSample(20, 0, 20);
+        mPredictor.predict(30, mPrediction);
+
+        // Not there yet, so nothing to compare with
+        assertEquals(-1, mPredictor.addSample(24, 0, 25), DELTA);
+        // The finger was at 27 at the predicted time, halfway between the samples
+        assertEquals(3, mPredictor.addSample(30, 0, 35), DELTA);
+        // The prediction is only compared once
+        assertEquals(-1, mPredictor.addSample(40, 0, 45), DELTA);
+    }
+
+    @Test
+    public void resetDropsSamplesAndPrediction() {
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(10, 0, 10);
+        mPredictor.addSample(20, 0, 20);
+        mPredictor.predict(30, mPrediction);
+
+        mPredictor.reset();
+        assertEquals(-1, mPredictor.addSample(50, 0, 40), DELTA);
+        mPredictor.predict(50, mPrediction);
+
+        assertEquals(50, mPrediction[0], DELTA);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Frederik Schweiger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package link.fls.swipestack.util;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import link.fls.swipestack.BuildConfig;
+import link.fls.swipestack.HarnessTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(HarnessTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class BitmapCacheTest {
+
+    @Test
+    public void subsamplesByPowersOfTwo() {
+        assertEquals(1, BitmapCache.calculateInSampleSize(1000, 1000, 600, 600));
+        assertEquals(2, BitmapCache.calculateInSampleSize(1000, 1000, 400, 400));
+        assertEquals(4, BitmapCache.calculateInSampleSize(4000, 3000, 480, 700));
+    }
+
+    @Test
+    public void scalesSubsampledBitmapToCoverRequestedSize() {
+        // Subsampled to 1000 x 750 for a 480 x 300 card
+        Bitmap bitmap = Bitmap.createBitmap(1000, 750, Bitmap.Config.ARGB_8888);
+
+        Bitmap scaled = BitmapCache.scaleToCover(bitmap, 480, 300);
+
+        assertEquals(480, scaled.getWidth());
+        assertEquals(360, scaled.getHeight());
+    }
+
+    @Test
+    public void keepsBitmapWhichIsNotLarger() {
+        Bitmap bitmap = Bitmap.createBitmap(400, 300, Bitmap.Config.ARGB_8888);
+
+        assertSame(bitmap, BitmapCache.scaleToCover(bitmap, 480, 300));
+        assertSame(bitmap, BitmapCache.scaleToCover(bitmap, 0, 0));
+    }
+}
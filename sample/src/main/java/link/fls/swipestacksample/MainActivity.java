@@ -27,7 +27,6 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -36,6 +35,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import link.fls.swipestack.SwipeStack;
+import link.fls.swipestack.SwipeStackAdapter;
 
 public class MainActivity extends AppCompatActivity implements SwipeStack.SwipeStackListener, View.OnClickListener {
 
@@ -44,7 +44,7 @@ public class MainActivity extends AppCompatActivity implements SwipeStack.SwipeS
 
     private ArrayList<String> mData;
     private SwipeStack mSwipeStack;
-    private SwipeStackAdapter mAdapter;
+    private CardAdapter mAdapter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -61,7 +61,7 @@ public class MainActivity extends AppCompatActivity implements SwipeStack.SwipeS
         mFab.setOnClickListener(this);
 
         mData = new ArrayList<>();
-        mAdapter = new SwipeStackAdapter(mData);
+        mAdapter = new CardAdapter(mData);
         mSwipeStack.setAdapter(mAdapter);
         mSwipeStack.setListener(this);
 
@@ -82,7 +82,7 @@ public class MainActivity extends AppCompatActivity implements SwipeStack.SwipeS
             mSwipeStack.swipeTopViewToRight();
         } else if (v.equals(mFab)) {
             mData.add(getString(R.string.dummy_fab));
-            mAdapter.notifyDataSetChanged();
+            mAdapter.notifyItemInserted(mData.size() - 1);
         }
     }
 
@@ -130,11 +130,11 @@ public class MainActivity extends AppCompatActivity implements SwipeStack.SwipeS
         Toast.makeText(this, R.string.stack_empty, Toast.LENGTH_SHORT).show();
     }
 
-    public class SwipeStackAdapter extends BaseAdapter {
+    public class CardAdapter extends SwipeStackAdapter {
 
         private List<String> mData;
 
-        public SwipeStackAdapter(List<String> data) {
+        public CardAdapter(List<String> data) {
             this.mData = data;
         }
 